@@ -17,29 +17,34 @@
  * License along with this program; if not, write to the Free Software
  * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
  */
-package org.sonarlint.intellij.editor;
+package org.sonarlint.intellij.analysis;
 
-import org.junit.Before;
-import org.junit.Test;
+import org.sonarlint.intellij.trigger.TriggerType;
 
-import static org.assertj.core.api.Assertions.assertThat;
-import static org.sonarlint.intellij.SonarLintTestUtils.createIssue;
-
-public class AccumulatorIssueListenerTest {
-  private AccumulatorIssueListener listener;
-
-  @Before
-  public void setUp() {
-    listener = new AccumulatorIssueListener();
-  }
+/**
+ * Order in which pending background analyses are run, the most urgent first
+ */
+enum AnalysisPriority {
+  // the user is looking at the results
+  INTERACTIVE,
+  // a commit is waiting for the results
+  CHECK_IN,
+  // large sets of files, split in chunks so that more urgent analyses can run in between
+  BATCH;
 
-  @Test
-  public void test_issue_listener() {
-    for (int i = 0; i < 5; i++) {
-      listener.handle(createIssue(i));
+  static AnalysisPriority of(TriggerType trigger) {
+    switch (trigger) {
+      case EDITOR_CHANGE:
+      case EDITOR_OPEN:
+        return INTERACTIVE;
+      case CHECK_IN:
+        return CHECK_IN;
+      default:
+        return BATCH;
     }
+  }
 
-    assertThat(listener.getIssues()).hasSize(5);
-    assertThat(listener.getIssues().get(0).getRuleKey()).isEqualTo("0");
+  boolean isMoreUrgentThan(AnalysisPriority other) {
+    return compareTo(other) < 0;
   }
 }
@@ -41,6 +41,14 @@ public class SonarLintJob {
 
   SonarLintJob(Project project, Map<Module, Collection<VirtualFile>> files, Collection<VirtualFile> filesToClearIssues, TriggerType trigger, boolean waitForServerIssues,
     AnalysisCallback callback) {
+    this(project, files, filesToClearIssues, trigger, waitForServerIssues, callback, System.currentTimeMillis());
+  }
+
+  /**
+   * @param creationTime when the job was submitted, which is earlier than its creation for jobs merged while waiting
+   */
+  SonarLintJob(Project project, Map<Module, Collection<VirtualFile>> files, Collection<VirtualFile> filesToClearIssues, TriggerType trigger, boolean waitForServerIssues,
+    AnalysisCallback callback, long creationTime) {
     this.project = project;
     this.filesToClearIssues = Collections.unmodifiableCollection(filesToClearIssues);
     this.callback = callback;
@@ -50,7 +58,7 @@ public class SonarLintJob {
 
     this.files = Collections.unmodifiableMap(new HashMap<>(files));
     this.trigger = trigger;
-    this.creationTime = System.currentTimeMillis();
+    this.creationTime = creationTime;
   }
 
   public Project project() {
@@ -21,16 +21,28 @@ package org.sonarlint.intellij.analysis;
 
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.impl.BackgroundableProcessIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
 import com.intellij.openapi.project.ProjectManagerListener;
+import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.util.messages.MessageBus;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.jetbrains.annotations.NotNull;
 import org.sonarlint.intellij.messages.TaskListener;
 import org.sonarlint.intellij.trigger.TriggerType;
@@ -38,11 +50,26 @@ import org.sonarlint.intellij.ui.SonarLintConsole;
 import org.sonarlint.intellij.util.SonarLintUtils;
 
 public class SonarLintJobManager implements Disposable {
-  private final ExecutorService executor = Executors.newSingleThreadExecutor(new AnalysisThreadFactory());
+  private final ExecutorService executor;
   private final MessageBus messageBus;
   private final Project myProject;
+  // background jobs waiting for the executor, in submission order. Guarded by itself.
+  private final List<PendingJob> pendingJobs = new ArrayList<>();
+  // background tasks being run in the analysis thread, more than one if some yielded to more urgent ones. Guarded by itself.
+  private final List<SonarLintTask> runningTasks = new ArrayList<>();
+  private volatile Thread analysisThread;
 
   public SonarLintJobManager(Project project) {
+    this(project, Executors.newSingleThreadExecutor(new AnalysisThreadFactory()));
+  }
+
+  /**
+   * Runs the jobs with the given executor, for tests
+   * @deprecated not to be injected, to silence a check in 2019.3
+   */
+  @Deprecated
+  SonarLintJobManager(Project project, ExecutorService executor) {
+    this.executor = executor;
     this.messageBus = project.getMessageBus();
     myProject = project;
     project.getMessageBus().connect().subscribe(ProjectManager.TOPIC, new ProjectManagerListener() {
@@ -56,8 +83,10 @@ public class SonarLintJobManager implements Disposable {
   }
 
   /**
-   * Runs SonarLint analysis asynchronously, as a background task, in the application's thread pool.
-   * It might queue the submission of the job in the thread pool.
+   * Runs SonarLint analysis asynchronously, as a background task, in the analysis thread.
+   * It might queue the job, until the more urgent pending jobs (see {@link AnalysisPriority}) are done. While it waits, jobs with
+   * the same trigger submitted for any of its modules are merged into it, so that each file is analyzed once, with its latest content.
+   * For the same reason, a running analysis triggered by a change in the editor is canceled when another change of its files is submitted.
    * It won't block the current thread (in most cases, the event dispatch thread), but the contents of the file being analyzed
    * might be changed with the editor at the same time, resulting in a bad or failed placement of the issues in the editor.
    *
@@ -67,10 +96,153 @@ public class SonarLintJobManager implements Disposable {
     SonarLintJob newJob = new SonarLintJob(myProject, files, filesToClearIssues, trigger, false, callback);
     SonarLintConsole console = SonarLintUtils.getService(myProject, SonarLintConsole.class);
     console.debug(String.format("[%s] %d file(s) submitted", trigger.getName(), newJob.allFiles().count()));
-    SonarLintTask task = new SonarLintTask(myProject, newJob, true);
-    notifyStart(task.getJob());
-    ProgressManager progressManager = ProgressManager.getInstance();
-    executor.submit(() -> progressManager.run(task));
+    notifyStart(newJob);
+    cancelSupersededTasks(newJob);
+
+    PendingJob pendingJob = new PendingJob(newJob);
+    synchronized (pendingJobs) {
+      if (mergeIntoPendingJobs(pendingJob)) {
+        console.debug(String.format("[%s] Merged with a pending analysis", trigger.getName()));
+        return;
+      }
+      pendingJobs.add(pendingJob);
+    }
+    // each pending job has its task in the executor, which runs the most urgent pending job when its turn comes
+    executor.submit(this::runMostUrgentPendingJob);
+  }
+
+  private void runMostUrgentPendingJob() {
+    SonarLintJob job = takeMostUrgentPendingJob(null);
+    if (job != null) {
+      runBackgroundJob(job);
+    }
+  }
+
+  private void runBackgroundJob(SonarLintJob job) {
+    SonarLintTask task = new SonarLintTask(myProject, job, true);
+    synchronized (runningTasks) {
+      runningTasks.add(task);
+    }
+    try {
+      runInAnalysisThread(task);
+    } finally {
+      synchronized (runningTasks) {
+        runningTasks.remove(task);
+      }
+    }
+  }
+
+  /**
+   * The issues of a file edited while it's being analyzed can't be matched with its new content, so the running analyses of an editor
+   * change are canceled when a new change of all their files is submitted. Their callbacks are not called.
+   */
+  private void cancelSupersededTasks(SonarLintJob newJob) {
+    if (newJob.trigger() != TriggerType.EDITOR_CHANGE) {
+      return;
+    }
+    Set<VirtualFile> newFiles = newJob.allFiles().collect(Collectors.toSet());
+    synchronized (runningTasks) {
+      for (SonarLintTask task : runningTasks) {
+        SonarLintJob job = task.getJob();
+        if (job.trigger() == TriggerType.EDITOR_CHANGE && job.allFiles().allMatch(newFiles::contains)) {
+          SonarLintUtils.getService(myProject, SonarLintConsole.class)
+            .debug(String.format("[%s] Canceling the running analysis of the same file(s)", newJob.trigger().getName()));
+          task.cancel();
+        }
+      }
+    }
+  }
+
+  /**
+   * Called by long running jobs between two chunks of files, to run the pending jobs that are more urgent than them in the meantime
+   */
+  void yieldToMoreUrgentJobs(SonarLintJob runningJob) {
+    if (Thread.currentThread() != analysisThread) {
+      // modal analyses run in their own thread, the pending jobs will run after them
+      return;
+    }
+    AnalysisPriority priority = AnalysisPriority.of(runningJob.trigger());
+    SonarLintJob job;
+    while ((job = takeMostUrgentPendingJob(priority)) != null) {
+      runBackgroundJob(job);
+    }
+  }
+
+  /**
+   * Merges the pending jobs that share a module with the new one. The first of them receives all the files and the others
+   * are removed, so that their turn in the executor runs the next pending job instead.
+   *
+   * @return whether the new job was merged into an already queued job
+   */
+  private boolean mergeIntoPendingJobs(PendingJob newJob) {
+    PendingJob target = null;
+    Iterator<PendingJob> it = pendingJobs.iterator();
+    while (it.hasNext()) {
+      PendingJob pending = it.next();
+      if (!pending.canMerge(newJob)) {
+        continue;
+      }
+      if (target == null) {
+        target = pending;
+      } else {
+        target.merge(pending);
+        it.remove();
+      }
+    }
+    if (target == null) {
+      return false;
+    }
+    target.merge(newJob);
+    return true;
+  }
+
+  /**
+   * Takes the pending job with the most urgent priority, the oldest first for a given priority
+   *
+   * @param moreUrgentThan if not null, only takes a job that is more urgent than this priority
+   * @return null if there is no such pending job
+   */
+  @CheckForNull
+  private SonarLintJob takeMostUrgentPendingJob(@Nullable AnalysisPriority moreUrgentThan) {
+    PendingJob mostUrgent = null;
+    synchronized (pendingJobs) {
+      for (PendingJob pending : pendingJobs) {
+        if (mostUrgent == null || pending.priority.isMoreUrgentThan(mostUrgent.priority)) {
+          mostUrgent = pending;
+        }
+      }
+      if (mostUrgent == null || (moreUrgentThan != null && !mostUrgent.priority.isMoreUrgentThan(moreUrgentThan))) {
+        return null;
+      }
+      pendingJobs.remove(mostUrgent);
+    }
+    return mostUrgent.toJob();
+  }
+
+  /**
+   * ProgressManager#run starts background tasks in a pooled thread. They run in the analysis thread instead, so that jobs run one
+   * after the other in the order of their priority.
+   */
+  private void runInAnalysisThread(SonarLintTask task) {
+    analysisThread = Thread.currentThread();
+    SonarLintJob job = task.getJob();
+    long waitMs = System.currentTimeMillis() - job.creationTime();
+    SonarLintUtils.getService(myProject, SonarLintConsole.class)
+      .debug(String.format("[%s] Analysis started after waiting %d ms in the queue", job.trigger().getName(), waitMs));
+
+    if (task.isHeadless()) {
+      // already runs in the current thread
+      ProgressManager.getInstance().run(task);
+      return;
+    }
+    BackgroundableProcessIndicator indicator = new BackgroundableProcessIndicator(task);
+    try {
+      ProgressManager.getInstance().runProcess(() -> task.run(indicator), indicator);
+    } catch (ProcessCanceledException e) {
+      // the task handles cancellation itself, it can only be thrown when the process ends
+    } finally {
+      Disposer.dispose(indicator);
+    }
   }
 
   /**
@@ -97,7 +269,7 @@ public class SonarLintJobManager implements Disposable {
     if (modal) {
       progressManager.run(task);
     } else {
-      executor.submit(() -> progressManager.run(task));
+      executor.submit(() -> runInAnalysisThread(task));
     }
   }
 
@@ -109,4 +281,62 @@ public class SonarLintJobManager implements Disposable {
   public void dispose() {
     executor.shutdownNow();
   }
+
+  /**
+   * Files of the background jobs submitted while waiting for the executor. Can only be modified while holding the lock of the
+   * pending jobs.
+   */
+  private class PendingJob {
+    private final TriggerType trigger;
+    private final AnalysisPriority priority;
+    private final long creationTime;
+    private final Map<Module, Set<VirtualFile>> files = new LinkedHashMap<>();
+    private final Set<VirtualFile> filesToClearIssues = new LinkedHashSet<>();
+    private final List<AnalysisCallback> callbacks = new ArrayList<>();
+
+    private PendingJob(SonarLintJob job) {
+      this.trigger = job.trigger();
+      this.priority = AnalysisPriority.of(trigger);
+      this.creationTime = job.creationTime();
+      job.filesPerModule().forEach((module, moduleFiles) -> files.put(module, new LinkedHashSet<>(moduleFiles)));
+      filesToClearIssues.addAll(job.filesToClearIssues());
+      if (job.callback() != null) {
+        callbacks.add(job.callback());
+      }
+    }
+
+    private boolean canMerge(PendingJob other) {
+      return trigger == other.trigger && other.files.keySet().stream().anyMatch(files::containsKey);
+    }
+
+    private void merge(PendingJob other) {
+      other.files.forEach((module, moduleFiles) -> files.computeIfAbsent(module, m -> new LinkedHashSet<>()).addAll(moduleFiles));
+      filesToClearIssues.addAll(other.filesToClearIssues);
+      callbacks.addAll(other.callbacks);
+    }
+
+    private SonarLintJob toJob() {
+      Map<Module, Collection<VirtualFile>> jobFiles = new LinkedHashMap<>(files);
+      AnalysisCallback callback = callbacks.size() == 1 ? callbacks.get(0) : new MergedCallback(callbacks);
+      return new SonarLintJob(myProject, jobFiles, filesToClearIssues, trigger, false, callback, creationTime);
+    }
+  }
+
+  private static class MergedCallback implements AnalysisCallback {
+    private final List<AnalysisCallback> callbacks;
+
+    private MergedCallback(List<AnalysisCallback> callbacks) {
+      this.callbacks = callbacks;
+    }
+
+    @Override
+    public void onSuccess(Set<VirtualFile> failedVirtualFiles) {
+      callbacks.forEach(c -> c.onSuccess(failedVirtualFiles));
+    }
+
+    @Override
+    public void onError(Throwable e) {
+      callbacks.forEach(c -> c.onError(e));
+    }
+  }
 }
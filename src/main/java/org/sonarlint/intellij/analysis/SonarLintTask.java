@@ -19,6 +19,7 @@
  */
 package org.sonarlint.intellij.analysis;
 
+import com.google.common.collect.Lists;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ModalityState;
 import com.intellij.openapi.diagnostic.Logger;
@@ -29,14 +30,23 @@ import com.intellij.openapi.progress.Task;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.Messages;
 import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
-import org.sonarlint.intellij.editor.AccumulatorIssueListener;
+import org.sonarlint.intellij.editor.StreamingIssueListener;
 import org.sonarlint.intellij.issue.IssueProcessor;
+import org.sonarlint.intellij.issue.LiveIssue;
 import org.sonarlint.intellij.messages.TaskListener;
 import org.sonarlint.intellij.ui.SonarLintConsole;
 import org.sonarlint.intellij.util.SonarLintUtils;
@@ -49,10 +59,18 @@ import org.sonarsource.sonarlint.core.client.api.exceptions.CanceledException;
 
 public class SonarLintTask extends Task.Backgroundable {
   private static final Logger LOGGER = Logger.getInstance(SonarLintTask.class);
+  static final String BATCH_CHUNK_SIZE_PROPERTY_KEY = "sonarlint.analysis.batch.chunkSize";
+  private static final int DEFAULT_BATCH_CHUNK_SIZE = 200;
+  // number of modules (or chunks of files) analyzed at the same time
+  static final String PARALLELISM_PROPERTY_KEY = "sonarlint.analysis.parallelism";
+  private static final long AWAIT_POLL_MS = 100;
   protected final SonarLintJob job;
   protected final boolean modal;
   private final boolean startInBackground;
   protected final Project myProject;
+  // set when the task is superseded, possibly before it starts running
+  private volatile boolean canceled;
+  private volatile ProgressIndicator runningIndicator;
 
   public SonarLintTask(Project project, SonarLintJob job, boolean background) {
     this(project, job, false, background);
@@ -90,17 +108,34 @@ public class SonarLintTask extends Task.Backgroundable {
     return job;
   }
 
+  /**
+   * Cancels the analysis through its progress indicator, so that the engine stops as soon as it checks it. Can be called from any thread.
+   */
+  void cancel() {
+    canceled = true;
+    ProgressIndicator indicator = runningIndicator;
+    if (indicator != null) {
+      indicator.cancel();
+    }
+  }
+
   @Override
   public void run(ProgressIndicator indicator) {
-    AccumulatorIssueListener listener = new AccumulatorIssueListener();
+    runningIndicator = indicator;
+    if (canceled) {
+      indicator.cancel();
+    }
+    StreamingIssueListener listener = new StreamingIssueListener();
+    Map<VirtualFile, Collection<LiveIssue>> processedIssues = new HashMap<>();
 
     try {
       checkCanceled(indicator, myProject);
+      SonarLintUtils.getService(myProject, IssueProcessor.class).clearIssues(job);
 
       List<ClientInputFile> allFailedAnalysisFiles;
       if (getJob().allFiles().findAny().isPresent()) {
 
-        List<AnalysisResults> results = analyze(myProject, indicator, listener);
+        List<AnalysisResults> results = analyze(myProject, indicator, listener, processedIssues);
 
         // last chance to cancel (to avoid the possibility of having interrupt flag set)
         checkCanceled(indicator, myProject);
@@ -117,14 +152,14 @@ public class SonarLintTask extends Task.Backgroundable {
         allFailedAnalysisFiles = Collections.emptyList();
       }
 
-      List<Issue> issues = listener.getIssues();
       ProgressManager.getInstance().executeNonCancelableSection(() -> {
-        indicator.setText("Updating SonarLint issues: " + issues.size());
+        indicator.setText("Updating SonarLint issues: " + listener.count());
 
         IssueProcessor processor = SonarLintUtils.getService(myProject, IssueProcessor.class);
-        processor.process(job, indicator, issues, allFailedAnalysisFiles);
+        processor.process(job, indicator, processedIssues, allFailedAnalysisFiles);
       });
     } catch (CanceledException e1) {
+      // issues of the modules already analyzed were published, but the job is not complete, so its callback is not called
       SonarLintConsole console = SonarLintConsole.get(job.project());
       console.info("Analysis canceled");
     } catch (Throwable e) {
@@ -161,7 +196,16 @@ public class SonarLintTask extends Task.Backgroundable {
     }
   }
 
-  private List<AnalysisResults> analyze(Project project, ProgressIndicator indicator, AccumulatorIssueListener listener) {
+  /**
+   * Analyzes the modules one after the other. The engine doesn't tell when the analysis of a file is complete, but the issues of
+   * all the files of a module are known once its analysis ends, so they are processed and displayed before the next module is analyzed.
+   * Batch analyses are split in chunks of files, between which the more urgent pending analyses can run.
+   * If a parallelism is configured, several modules (or chunks) are analyzed at the same time, but their issues are still processed
+   * in the same order as for a sequential analysis. While more urgent analyses run between two chunks, the chunks already started
+   * complete but no other one starts.
+   */
+  private List<AnalysisResults> analyze(Project project, ProgressIndicator indicator, StreamingIssueListener listener,
+    Map<VirtualFile, Collection<LiveIssue>> processedIssues) {
     SonarLintAnalyzer analyzer = SonarLintUtils.getService(project, SonarLintAnalyzer.class);
 
     indicator.setIndeterminate(true);
@@ -180,13 +224,105 @@ public class SonarLintTask extends Task.Backgroundable {
 
     LOGGER.info(indicator.getText());
 
-    ProgressMonitor progressMonitor = new TaskProgressMonitor(indicator, myProject);
+    TaskProgressMonitor progressMonitor = new TaskProgressMonitor(indicator, myProject);
     List<AnalysisResults> results = new LinkedList<>();
 
+    IssueProcessor processor = SonarLintUtils.getService(project, IssueProcessor.class);
+
+    boolean batch = AnalysisPriority.of(job.trigger()) == AnalysisPriority.BATCH;
+    List<AnalysisUnit> units = new ArrayList<>();
     for (Map.Entry<Module, Collection<VirtualFile>> e : job.filesPerModule().entrySet()) {
-      results.add(analyzer.analyzeModule(e.getKey(), e.getValue(), listener, progressMonitor));
-      checkCanceled(indicator, myProject);
+      for (Collection<VirtualFile> files : batch ? chunks(e.getValue()) : Collections.singletonList(e.getValue())) {
+        units.add(new AnalysisUnit(e.getKey(), files));
+      }
+    }
+
+    int parallelism = Math.min(parallelism(), units.size());
+    ExecutorService pool = parallelism > 1 ? Executors.newFixedThreadPool(parallelism, new AnalysisThreadFactory()) : null;
+    List<ProgressMonitor> monitors = pool != null ? progressMonitor.split(units.size()) : Collections.emptyList();
+    List<Future<AnalysisResults>> futures = new ArrayList<>(units.size());
+    try {
+      for (int i = 0; i < units.size(); i++) {
+        if (batch && i > 0) {
+          SonarLintUtils.getService(project, SonarLintJobManager.class).yieldToMoreUrgentJobs(job);
+          checkCanceled(indicator, myProject);
+        }
+        AnalysisUnit unit = units.get(i);
+        AnalysisResults result;
+        if (pool != null) {
+          // units are started at most parallelism ahead of the one awaited, so that none starts while more urgent jobs run
+          while (futures.size() < Math.min(units.size(), i + parallelism)) {
+            AnalysisUnit next = units.get(futures.size());
+            ProgressMonitor monitor = monitors.get(futures.size());
+            futures.add(pool.submit(() -> analyzer.analyzeModule(next.module, next.files, listener, monitor)));
+          }
+          result = await(futures.get(i), indicator);
+        } else {
+          result = analyzer.analyzeModule(unit.module, unit.files, listener, progressMonitor);
+        }
+        results.add(result);
+        checkCanceled(indicator, myProject);
+
+        List<Issue> issues = listener.take(unit.files);
+        ProgressManager.getInstance().executeNonCancelableSection(
+          () -> processedIssues.putAll(processor.processFiles(unit.files, issues, result.failedAnalysisFiles())));
+      }
+    } finally {
+      if (pool != null) {
+        pool.shutdownNow();
+      }
     }
     return results;
   }
+
+  private AnalysisResults await(Future<AnalysisResults> future, ProgressIndicator indicator) {
+    try {
+      while (true) {
+        checkCanceled(indicator, myProject);
+        try {
+          return future.get(AWAIT_POLL_MS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+          // check again if canceled
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CanceledException();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
+  private static int parallelism() {
+    int parallelism = Integer.getInteger(PARALLELISM_PROPERTY_KEY, 1);
+    return Math.max(1, Math.min(parallelism, Runtime.getRuntime().availableProcessors()));
+  }
+
+  private static Collection<Collection<VirtualFile>> chunks(Collection<VirtualFile> files) {
+    int chunkSize = Integer.getInteger(BATCH_CHUNK_SIZE_PROPERTY_KEY, DEFAULT_BATCH_CHUNK_SIZE);
+    if (chunkSize <= 0 || files.size() <= chunkSize) {
+      return Collections.singletonList(files);
+    }
+    return new ArrayList<>(Lists.partition(new ArrayList<>(files), chunkSize));
+  }
+
+  /**
+   * Files of a module analyzed together
+   */
+  private static class AnalysisUnit {
+    private final Module module;
+    private final Collection<VirtualFile> files;
+
+    private AnalysisUnit(Module module, Collection<VirtualFile> files) {
+      this.module = module;
+      this.files = files;
+    }
+  }
 }
@@ -85,7 +85,8 @@ public class ProjectBindingManager {
       return new ConnectedSonarLintFacade(connectionId, engine, myProject, module);
     }
 
-    return new StandaloneSonarLintFacade(myProject, engineManager.getStandaloneEngine());
+    return new StandaloneSonarLintFacade(myProject, engineManager.getStandaloneEngine(), engineManager::acquireStandaloneEngines,
+      engineManager::releaseStandaloneEngines, engineManager.getShardExecutor());
   }
 
   public synchronized ConnectedSonarLintEngine getConnectedEngineSkipChecks() {
@@ -65,6 +65,9 @@ public class SonarLintEngineFactory  {
     Language.XML
   };
 
+  // the plugins are looked up once, and shared by all the standalone engines of the pool
+  private URL[] plugins;
+
   ConnectedSonarLintEngine createEngine(String serverId) {
     GlobalLogOutput globalLogOutput = SonarLintUtils.getService(GlobalLogOutput.class);
     final NodeJsManager nodeJsManager = SonarLintUtils.getService(NodeJsManager.class);
@@ -92,15 +95,13 @@ public class SonarLintEngineFactory  {
     Thread.currentThread().setContextClassLoader(this.getClass().getClassLoader());
 
     try {
-      URL[] plugins = loadPlugins();
-
       GlobalLogOutput globalLogOutput = SonarLintUtils.getService(GlobalLogOutput.class);
       final NodeJsManager nodeJsManager = SonarLintUtils.getService(NodeJsManager.class);
       StandaloneGlobalConfiguration globalConfiguration = StandaloneGlobalConfiguration.builder()
         .setLogOutput(globalLogOutput)
         .setSonarLintUserHome(getSonarLintHome())
         .setWorkDir(getWorkDir())
-        .addPlugins(plugins)
+        .addPlugins(getPlugins())
         .addEnabledLanguages(STANDALONE_LANGUAGES)
         .setExtraProperties(prepareExtraProps())
         .setNodeJs(nodeJsManager.getNodeJsPath(), nodeJsManager.getNodeJsVersion())
@@ -115,6 +116,13 @@ public class SonarLintEngineFactory  {
   }
 
 
+  private synchronized URL[] getPlugins() throws IOException, URISyntaxException {
+    if (plugins == null) {
+      plugins = loadPlugins();
+    }
+    return plugins;
+  }
+
   private URL[] loadPlugins() throws IOException, URISyntaxException {
     URL pluginsDir = this.getClass().getClassLoader().getResource("plugins");
     if (pluginsDir == null) {
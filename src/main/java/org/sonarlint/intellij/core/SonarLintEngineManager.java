@@ -20,11 +20,20 @@
 package org.sonarlint.intellij.core;
 
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntSupplier;
 import java.util.stream.Collectors;
 import org.sonar.api.utils.log.Loggers;
 import org.sonarlint.intellij.config.global.SonarQubeServer;
@@ -36,9 +45,25 @@ import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneSonarLintE
 import static org.sonarlint.intellij.config.Settings.getGlobalSettings;
 
 public class SonarLintEngineManager implements Disposable {
+  private static final Logger LOGGER = Logger.getInstance(SonarLintEngineManager.class);
+  // max number of standalone engines analyzing shards of the same files at the same time
+  static final String POOL_SIZE_PROPERTY_KEY = "sonarlint.analysis.engines";
+  // rough estimate of the heap retained by an engine with all its plugins loaded
+  static final long ENGINE_MEMORY = 200L * 1024 * 1024;
   private final Map<String, ConnectedSonarLintEngine> engines = new HashMap<>();
   private final SonarLintEngineFactory factory;
   private StandaloneSonarLintEngine standalone;
+  // standalone engines other than the main one, only used to analyze shards of big sets of files
+  private final List<StandaloneSonarLintEngine> standalonePool = new ArrayList<>();
+  // engines of the pool being used by an analysis, each one by a single analysis at a time
+  private final Set<StandaloneSonarLintEngine> leasedEngines = Collections.newSetFromMap(new IdentityHashMap<>());
+  private final IntSupplier poolSizeLimit;
+  // runs the shards analyzed by the engines of the pool. There is at most one thread per engine in use, and idle threads stop.
+  private final ExecutorService shardExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+    .setNameFormat("SonarLintAnalysisShard%d")
+    .setDaemon(true)
+    .setPriority(Thread.MIN_PRIORITY)
+    .build());
 
   public SonarLintEngineManager() {
     this(new SonarLintEngineFactory());
@@ -50,7 +75,18 @@ public class SonarLintEngineManager implements Disposable {
    */
   @Deprecated
   SonarLintEngineManager(SonarLintEngineFactory factory) {
+    this(factory, () -> maxPoolSize(Integer.getInteger(POOL_SIZE_PROPERTY_KEY, 1), Runtime.getRuntime().availableProcessors(),
+      Runtime.getRuntime().maxMemory()));
+  }
+
+  /**
+   * Replace by @NonInjectable when supported
+   * @deprecated
+   */
+  @Deprecated
+  SonarLintEngineManager(SonarLintEngineFactory factory, IntSupplier poolSizeLimit) {
     this.factory = factory;
+    this.poolSizeLimit = poolSizeLimit;
   }
 
   private static void stopInThread(final ConnectedSonarLintEngine engine) {
@@ -113,6 +149,11 @@ public class SonarLintEngineManager implements Disposable {
       standalone.stop();
       standalone = null;
     }
+    for (StandaloneSonarLintEngine e : standalonePool) {
+      e.stop();
+    }
+    standalonePool.clear();
+    leasedEngines.clear();
   }
 
   public synchronized ConnectedSonarLintEngine getConnectedEngine(String serverId) {
@@ -131,6 +172,73 @@ public class SonarLintEngineManager implements Disposable {
     return standalone;
   }
 
+  /**
+   * Returns up to {@code count} standalone engines, starting with the main one, to analyze shards of files at the same time.
+   * Additional engines are started on demand and kept for the next analyses. Their number is limited by a system property
+   * (1 by default, so the main engine is the only one), the number of processors, and the max heap: all the engines together
+   * shouldn't use more than a quarter of it.
+   * Additional engines are only lent to one analysis at a time, until {@link #releaseStandaloneEngines} is called, so that
+   * analyses of modules in parallel can't use more threads than there are engines in addition to their own.
+   */
+  public synchronized List<StandaloneSonarLintEngine> acquireStandaloneEngines(int count) {
+    List<StandaloneSonarLintEngine> pool = new ArrayList<>();
+    pool.add(getStandaloneEngine());
+    int maxSize = poolSizeLimit.getAsInt();
+    trimStandalonePool(maxSize);
+    int size = Math.min(count, maxSize);
+    for (StandaloneSonarLintEngine e : standalonePool) {
+      if (pool.size() >= size) {
+        return pool;
+      }
+      if (leasedEngines.add(e)) {
+        pool.add(e);
+      }
+    }
+    while (pool.size() < size && standalonePool.size() < maxSize - 1) {
+      LOGGER.info("Starting standalone engine #" + (standalonePool.size() + 2));
+      StandaloneSonarLintEngine e = factory.createEngine();
+      standalonePool.add(e);
+      leasedEngines.add(e);
+      pool.add(e);
+    }
+    return pool;
+  }
+
+  /**
+   * Runs the analyses of shards of files by the engines returned by {@link #acquireStandaloneEngines}
+   */
+  public ExecutorService getShardExecutor() {
+    return shardExecutor;
+  }
+
+  /**
+   * Gives back the engines returned by {@link #acquireStandaloneEngines} once their analysis is done
+   */
+  public synchronized void releaseStandaloneEngines(List<StandaloneSonarLintEngine> engines) {
+    engines.forEach(leasedEngines::remove);
+    trimStandalonePool(poolSizeLimit.getAsInt());
+  }
+
+  /**
+   * Stops the additional engines that are not used, if the limit was lowered since they were started
+   */
+  private void trimStandalonePool(int maxSize) {
+    Iterator<StandaloneSonarLintEngine> it = standalonePool.iterator();
+    while (it.hasNext() && standalonePool.size() > Math.max(0, maxSize - 1)) {
+      StandaloneSonarLintEngine e = it.next();
+      if (!leasedEngines.contains(e)) {
+        LOGGER.info("Stopping a standalone engine, the pool is limited to " + maxSize);
+        e.stop();
+        it.remove();
+      }
+    }
+  }
+
+  static int maxPoolSize(int requested, int processors, long maxMemory) {
+    long byMemory = maxMemory / 4 / ENGINE_MEMORY;
+    return (int) Math.max(1, Math.min(requested, Math.min(processors, byMemory)));
+  }
+
   public synchronized ConnectedSonarLintEngine getConnectedEngine(SonarLintProjectNotifications notifications, String serverId, String projectKey) throws InvalidBindingException {
     Preconditions.checkNotNull(notifications, "notifications");
     Preconditions.checkNotNull(serverId, "serverId");
@@ -155,6 +263,7 @@ public class SonarLintEngineManager implements Disposable {
 
   @Override
   public void dispose() {
+    shardExecutor.shutdownNow();
     stopAllEngines();
     Loggers.setTarget(null);
   }
@@ -20,6 +20,10 @@
 package org.sonarlint.intellij.core;
 
 import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -30,16 +34,24 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
 import java.util.function.Predicate;
 import org.sonarlint.intellij.ui.SonarLintConsole;
 import org.sonarlint.intellij.util.ProjectLogOutput;
 import org.sonarlint.intellij.util.SonarLintUtils;
+import org.sonarlint.intellij.util.TaskProgressMonitor;
+import org.sonarsource.sonarlint.core.client.api.common.Language;
 import org.sonarsource.sonarlint.core.client.api.common.PluginDetails;
 import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
 import org.sonarsource.sonarlint.core.client.api.common.RuleKey;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.AnalysisResults;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
+import org.sonarsource.sonarlint.core.client.api.exceptions.CanceledException;
 import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneAnalysisConfiguration;
 import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneRuleDetails;
 import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneSonarLintEngine;
@@ -47,14 +59,33 @@ import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneSonarLintE
 import static org.sonarlint.intellij.config.Settings.getGlobalSettings;
 
 final class StandaloneSonarLintFacade extends SonarLintFacade {
+  // files are split in shards analyzed by different engines only if each shard has at least this number of files
+  static final int MIN_SHARD_SIZE = 50;
   private final StandaloneSonarLintEngine sonarlint;
+  private final IntFunction<List<StandaloneSonarLintEngine>> acquireEngines;
+  private final Consumer<List<StandaloneSonarLintEngine>> releaseEngines;
+  private final ExecutorService shardExecutor;
 
   StandaloneSonarLintFacade(Project project, StandaloneSonarLintEngine engine) {
+    this(project, engine, count -> Collections.singletonList(engine), engines -> {
+    }, MoreExecutors.newDirectExecutorService());
+  }
+
+  /**
+   * @param acquireEngines provides up to the given number of engines to analyze shards of the files at the same time
+   * @param releaseEngines gives back the engines once the shards are analyzed
+   * @param shardExecutor runs the analysis of each shard, it must start them all at once
+   */
+  StandaloneSonarLintFacade(Project project, StandaloneSonarLintEngine engine, IntFunction<List<StandaloneSonarLintEngine>> acquireEngines,
+    Consumer<List<StandaloneSonarLintEngine>> releaseEngines, ExecutorService shardExecutor) {
     super(project);
     Preconditions.checkNotNull(project, "project");
     Preconditions.checkNotNull(project.getBasePath(), "project base path");
     Preconditions.checkNotNull(engine, "engine");
     this.sonarlint = engine;
+    this.acquireEngines = acquireEngines;
+    this.releaseEngines = releaseEngines;
+    this.shardExecutor = shardExecutor;
   }
 
   @Override
@@ -73,7 +104,34 @@ final class StandaloneSonarLintFacade extends SonarLintFacade {
       }
     });
 
-    StandaloneAnalysisConfiguration config = StandaloneAnalysisConfiguration.builder()
+    int maxShards = inputFiles.size() / MIN_SHARD_SIZE;
+    if (maxShards > 1) {
+      List<StandaloneSonarLintEngine> engines = acquireEngines.apply(maxShards);
+      try {
+        if (engines.size() > 1) {
+          List<List<ClientInputFile>> shards = Lists.partition(new ArrayList<>(inputFiles), (inputFiles.size() + engines.size() - 1) / engines.size());
+          List<StandaloneAnalysisConfiguration> configs = new ArrayList<>(shards.size());
+          for (List<ClientInputFile> shard : shards) {
+            configs.add(createConfiguration(baseDir, shard, props, excluded, included, params));
+          }
+          return analyzeShards(engines, configs, issueListener, progressMonitor);
+        }
+      } finally {
+        releaseEngines.accept(engines);
+      }
+    }
+
+    StandaloneAnalysisConfiguration config = createConfiguration(baseDir, inputFiles, props, excluded, included, params);
+    SonarLintConsole console = SonarLintUtils.getService(project, SonarLintConsole.class);
+    console.debug("Starting analysis with configuration:\n" + config.toString());
+    final AnalysisResults analysisResults = sonarlint.analyze(config, issueListener, new ProjectLogOutput(project), progressMonitor);
+    AnalysisRequirementNotifications.notifyOnceForSkippedPlugins(analysisResults, sonarlint.getPluginDetails(), project);
+    return analysisResults;
+  }
+
+  private static StandaloneAnalysisConfiguration createConfiguration(Path baseDir, Collection<ClientInputFile> inputFiles, Map<String, String> props,
+    List<RuleKey> excluded, List<RuleKey> included, Map<RuleKey, Map<String, String>> params) {
+    return StandaloneAnalysisConfiguration.builder()
       .setBaseDir(baseDir)
       .addInputFiles(inputFiles)
       .putAllExtraProperties(props)
@@ -81,10 +139,48 @@ final class StandaloneSonarLintFacade extends SonarLintFacade {
       .addIncludedRules(included)
       .addRuleParameters(params)
       .build();
+  }
 
+  /**
+   * Each shard is analyzed by its own engine, in its own thread. The issue listener receives the issues of all the shards.
+   * If a shard fails, the others are canceled. Returns only once all the shards are finished, since their engines are then
+   * given back to the pool.
+   */
+  private AnalysisResults analyzeShards(List<StandaloneSonarLintEngine> engines, List<StandaloneAnalysisConfiguration> configs,
+    IssueListener issueListener, ProgressMonitor progressMonitor) {
     SonarLintConsole console = SonarLintUtils.getService(project, SonarLintConsole.class);
-    console.debug("Starting analysis with configuration:\n" + config.toString());
-    final AnalysisResults analysisResults = sonarlint.analyze(config, issueListener, new ProjectLogOutput(project), progressMonitor);
+    ShardsProgressMonitor shardsMonitor = new ShardsProgressMonitor(progressMonitor);
+    List<ProgressMonitor> monitors = TaskProgressMonitor.split(shardsMonitor, configs.size());
+    List<Future<AnalysisResults>> futures = new ArrayList<>(configs.size());
+    for (int i = 0; i < configs.size(); i++) {
+      StandaloneSonarLintEngine engine = engines.get(i);
+      StandaloneAnalysisConfiguration config = configs.get(i);
+      ProgressMonitor monitor = monitors.get(i);
+      console.debug("Starting analysis of shard " + (i + 1) + "/" + configs.size() + " with configuration:\n" + config.toString());
+      futures.add(shardExecutor.submit(() -> engine.analyze(config, issueListener, new ProjectLogOutput(project), monitor)));
+    }
+
+    List<AnalysisResults> results = new ArrayList<>(futures.size());
+    Throwable failure = null;
+    for (Future<AnalysisResults> future : futures) {
+      try {
+        // the futures are never canceled, so this returns once the shard is finished
+        results.add(Uninterruptibles.getUninterruptibly(future));
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause();
+          shardsMonitor.cancel();
+        }
+      }
+    }
+    if (failure != null) {
+      Throwables.throwIfUnchecked(failure);
+      throw new IllegalStateException(failure);
+    }
+    if (Thread.currentThread().isInterrupted()) {
+      throw new CanceledException();
+    }
+    AnalysisResults analysisResults = new MergedAnalysisResults(results);
     AnalysisRequirementNotifications.notifyOnceForSkippedPlugins(analysisResults, sonarlint.getPluginDetails(), project);
     return analysisResults;
   }
@@ -113,4 +209,75 @@ final class StandaloneSonarLintFacade extends SonarLintFacade {
     return details.getHtmlDescription();
   }
 
+  /**
+   * Monitor of all the shards, also canceled once a shard failed
+   */
+  private static class ShardsProgressMonitor extends ProgressMonitor {
+    private final ProgressMonitor parent;
+    private volatile boolean canceled;
+
+    private ShardsProgressMonitor(ProgressMonitor parent) {
+      this.parent = parent;
+    }
+
+    void cancel() {
+      canceled = true;
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return canceled || parent.isCanceled();
+    }
+
+    @Override
+    public void setMessage(String msg) {
+      parent.setMessage(msg);
+    }
+
+    @Override
+    public void setFraction(float fraction) {
+      parent.setFraction(fraction);
+    }
+
+    @Override
+    public void setIndeterminate(boolean indeterminate) {
+      parent.setIndeterminate(indeterminate);
+    }
+
+    @Override
+    public void executeNonCancelableSection(Runnable nonCancelable) {
+      parent.executeNonCancelableSection(nonCancelable);
+    }
+  }
+
+  private static class MergedAnalysisResults implements AnalysisResults {
+    private final int fileCount;
+    private final List<ClientInputFile> failedAnalysisFiles = new ArrayList<>();
+    private final Map<ClientInputFile, Language> languagePerFile = new HashMap<>();
+
+    private MergedAnalysisResults(List<AnalysisResults> results) {
+      int count = 0;
+      for (AnalysisResults result : results) {
+        count += result.fileCount();
+        failedAnalysisFiles.addAll(result.failedAnalysisFiles());
+        languagePerFile.putAll(result.languagePerFile());
+      }
+      this.fileCount = count;
+    }
+
+    @Override
+    public int fileCount() {
+      return fileCount;
+    }
+
+    @Override
+    public Collection<ClientInputFile> failedAnalysisFiles() {
+      return failedAnalysisFiles;
+    }
+
+    @Override
+    public Map<ClientInputFile, Language> languagePerFile() {
+      return languagePerFile;
+    }
+  }
 }
@@ -64,10 +64,11 @@ public class SonarExternalAnnotator extends ExternalAnnotator<SonarExternalAnnot
     issues.stream()
       .filter(issue -> !issue.isResolved())
       .forEach(issue -> {
-        // reject non-null ranges that are no longer valid. It probably means that they were deleted from the file.
+        // reject ranges that are no longer valid. It probably means that they were deleted from the file, or that the file
+        // changed since the analysis if it wasn't open.
         RangeMarker range = issue.getRange();
-        if (range == null || range.isValid()) {
-          addAnnotation(issue, holder);
+        if (issue.isFileLevel() || (range != null && range.isValid())) {
+          addAnnotation(issue, range, holder);
         }
       });
   }
@@ -93,11 +94,11 @@ public class SonarExternalAnnotator extends ExternalAnnotator<SonarExternalAnnot
     return collectedInfo;
   }
 
-  private void addAnnotation(LiveIssue issue, AnnotationHolder annotationHolder) {
+  private void addAnnotation(LiveIssue issue, @Nullable RangeMarker range, AnnotationHolder annotationHolder) {
     TextRange textRange;
 
-    if (issue.getRange() != null) {
-      textRange = createTextRange(issue.getRange());
+    if (range != null) {
+      textRange = createTextRange(range);
     } else {
       textRange = issue.psiFile().getTextRange();
     }
@@ -111,7 +112,7 @@ public class SonarExternalAnnotator extends ExternalAnnotator<SonarExternalAnnot
 
     issue.context().ifPresent(c -> annotation.registerFix(new ShowLocationsIntentionAction(issue, c)));
 
-    if (issue.getRange() == null) {
+    if (range == null) {
       annotation.setFileLevelAnnotation(true);
     } else {
       annotation.setTextAttributes(getTextAttrsKey(issue.getSeverity()));
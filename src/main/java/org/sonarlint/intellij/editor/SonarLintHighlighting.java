@@ -38,8 +38,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.Objects;
-import java.util.stream.Collectors;
 import javax.annotation.Nullable;
 import org.jetbrains.annotations.NotNull;
 import org.sonarlint.intellij.config.SonarLintTextAttributes;
@@ -73,7 +71,8 @@ public class SonarLintHighlighting {
   }
 
   public void highlightFlow(LiveIssue.Flow flow) {
-    updateHighlights(createHighlights(flow.locations()), flow.locations().get(0).location().getDocument());
+    RangeMarker firstLocation = flow.locations().get(0).location();
+    updateHighlights(createHighlights(flow.locations()), firstLocation != null ? firstLocation.getDocument() : null);
 
     displaySecondaryLocationNumbers(flow, null);
   }
@@ -81,7 +80,11 @@ public class SonarLintHighlighting {
   private void displaySecondaryLocationNumbers(LiveIssue.Flow flow, @Nullable LiveIssue.SecondaryLocation selectedLocation) {
     int i = 1;
     for (LiveIssue.SecondaryLocation issueLocation : flow.locations()) {
-      drawSecondaryLocationNumbers(issueLocation.location(), i++, selectedLocation != null && selectedLocation.equals(issueLocation));
+      RangeMarker location = issueLocation.location();
+      if (location != null) {
+        drawSecondaryLocationNumbers(location, i, selectedLocation != null && selectedLocation.equals(issueLocation));
+      }
+      i++;
     }
   }
 
@@ -108,8 +111,14 @@ public class SonarLintHighlighting {
 
   public void highlightSecondaryLocation(LiveIssue.SecondaryLocation secondaryLocation, LiveIssue.Flow parentFlow) {
     List<HighlightInfo> highlights = createHighlights(parentFlow.locations());
-    highlights.add(createHighlight(secondaryLocation.location(), secondaryLocation.message()));
-    updateHighlights(highlights, secondaryLocation.location().getDocument());
+    RangeMarker location = secondaryLocation.location();
+    if (location == null) {
+      // the file changed since the analysis
+      updateHighlights(highlights, null);
+      return;
+    }
+    highlights.add(createHighlight(location, secondaryLocation.message()));
+    updateHighlights(highlights, location.getDocument());
     displaySecondaryLocationNumbers(parentFlow, secondaryLocation);
   }
 
@@ -157,10 +166,14 @@ public class SonarLintHighlighting {
   }
 
   private static List<HighlightInfo> createHighlights(List<LiveIssue.SecondaryLocation> locations) {
-    return locations.stream()
-        .filter(Objects::nonNull)
-        .map(l -> createHighlight(l.location(), l.message()))
-        .collect(Collectors.toList());
+    List<HighlightInfo> highlights = new ArrayList<>(locations.size());
+    for (LiveIssue.SecondaryLocation l : locations) {
+      RangeMarker location = l != null ? l.location() : null;
+      if (location != null) {
+        highlights.add(createHighlight(location, l.message()));
+      }
+    }
+    return highlights;
   }
 
   private static HighlightInfo createHighlight(RangeMarker location, @Nullable String message) {
@@ -0,0 +1,74 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.editor;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
+
+/**
+ * Groups issues per file as the engine raises them, so that the issues of files whose analysis is complete can be
+ * processed without waiting for the other files.
+ */
+public class StreamingIssueListener implements IssueListener {
+  private final Map<VirtualFile, List<Issue>> issuesPerFile = new ConcurrentHashMap<>();
+  private final AtomicInteger count = new AtomicInteger();
+
+  @Override
+  public void handle(Issue issue) {
+    count.incrementAndGet();
+    ClientInputFile inputFile = issue.getInputFile();
+    if (inputFile == null) {
+      // project level issues are not displayed
+      return;
+    }
+    VirtualFile file = inputFile.getClientObject();
+    issuesPerFile.computeIfAbsent(file, f -> Collections.synchronizedList(new ArrayList<>())).add(issue);
+  }
+
+  /**
+   * Removes and returns the issues raised so far for the given files
+   */
+  public List<Issue> take(Collection<VirtualFile> files) {
+    List<Issue> issues = new ArrayList<>();
+    for (VirtualFile file : files) {
+      List<Issue> fileIssues = issuesPerFile.remove(file);
+      if (fileIssues != null) {
+        issues.addAll(fileIssues);
+      }
+    }
+    return issues;
+  }
+
+  /**
+   * Number of issues raised, including the ones already taken
+   */
+  public int count() {
+    return count.get();
+  }
+}
@@ -0,0 +1,137 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import org.apache.commons.codec.digest.DigestUtils;
+
+/**
+ * Checksum of a piece of text ignoring whitespaces, used to track issues. The result is the hash code of the hexadecimal MD5
+ * of the UTF-8 text without whitespaces, as computed before, so checksums already stored still match.
+ * The text is streamed into a digest owned by the calling thread, without building intermediate strings.
+ */
+final class Checksum {
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+  private static final int BUFFER_SIZE = 1024;
+  private static final byte REPLACEMENT = '?';
+  private static final ThreadLocal<Checksum> STATE = ThreadLocal.withInitial(Checksum::new);
+
+  private final MessageDigest digest = DigestUtils.getMd5Digest();
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  private final byte[] result = new byte[digest.getDigestLength()];
+  private int length;
+
+  private Checksum() {
+    // state is only created per thread
+  }
+
+  static int of(CharSequence text) {
+    return of(text, 0, text.length());
+  }
+
+  static int of(CharSequence text, int start, int end) {
+    return STATE.get().compute(text, start, end);
+  }
+
+  private int compute(CharSequence text, int start, int end) {
+    length = 0;
+    digest.reset();
+    // a high surrogate waiting for its low surrogate, which can come after whitespaces since they are removed first
+    char high = 0;
+    for (int i = start; i < end; i++) {
+      char c = text.charAt(i);
+      if (isWhitespace(c)) {
+        continue;
+      }
+      if (high != 0) {
+        char pending = high;
+        high = 0;
+        if (Character.isLowSurrogate(c)) {
+          writeCodePoint(Character.toCodePoint(pending, c));
+          continue;
+        }
+        write(REPLACEMENT);
+      }
+      if (Character.isHighSurrogate(c)) {
+        high = c;
+      } else if (Character.isLowSurrogate(c)) {
+        write(REPLACEMENT);
+      } else {
+        writeChar(c);
+      }
+    }
+    if (high != 0) {
+      write(REPLACEMENT);
+    }
+    flush();
+    try {
+      digest.digest(result, 0, result.length);
+    } catch (DigestException e) {
+      throw new IllegalStateException("Failed to compute checksum", e);
+    }
+    // same as the hash code of the hexadecimal string
+    int hash = 0;
+    for (byte b : result) {
+      hash = 31 * hash + HEX[(b >> 4) & 0xF];
+      hash = 31 * hash + HEX[b & 0xF];
+    }
+    return hash;
+  }
+
+  /**
+   * Characters matched by the \s regular expression, which was used to remove whitespaces
+   */
+  private static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  private void writeChar(char c) {
+    if (c < 0x80) {
+      write((byte) c);
+    } else if (c < 0x800) {
+      write((byte) (0xC0 | (c >> 6)));
+      write((byte) (0x80 | (c & 0x3F)));
+    } else {
+      write((byte) (0xE0 | (c >> 12)));
+      write((byte) (0x80 | ((c >> 6) & 0x3F)));
+      write((byte) (0x80 | (c & 0x3F)));
+    }
+  }
+
+  private void writeCodePoint(int codePoint) {
+    write((byte) (0xF0 | (codePoint >> 18)));
+    write((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+    write((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+    write((byte) (0x80 | (codePoint & 0x3F)));
+  }
+
+  private void write(byte b) {
+    if (length == buffer.length) {
+      flush();
+    }
+    buffer[length++] = b;
+  }
+
+  private void flush() {
+    digest.update(buffer, 0, length);
+    length = 0;
+  }
+}
@@ -19,38 +19,148 @@
  */
 package org.sonarlint.intellij.issue;
 
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.sonarlint.intellij.util.SonarLintUtils;
 
+/**
+ * Flows of secondary locations of an issue. They are only looked at when the user asks for the locations of an issue, so
+ * they are kept as arrays of offsets and messages, and turned into {@link LiveIssue.Flow}s the first time they are needed.
+ */
 public class IssueContext {
-  private final String summaryDescription;
-  private final List<LiveIssue.Flow> flows;
+  private final VirtualFile file;
+  private final long modificationStamp;
+  // start and end offsets of each location, in the order of the flows
+  private final int[] offsets;
+  private final String[] messages;
+  // index after the last location of each flow
+  private final int[] flowEnds;
+  @Nullable
+  private List<LiveIssue.Flow> flows;
 
-  public IssueContext(List<LiveIssue.Flow> flows) {
-    this.flows = flows;
-    summaryDescription = computeSummaryDescription();
+  private IssueContext(VirtualFile file, long modificationStamp, int[] offsets, String[] messages, int[] flowEnds) {
+    this.file = file;
+    this.modificationStamp = modificationStamp;
+    this.offsets = offsets;
+    this.messages = messages;
+    this.flowEnds = flowEnds;
   }
 
-  private String computeSummaryDescription() {
-    String description;
+  public String getSummaryDescription() {
     if (hasUniqueFlow()) {
-      int numLocations = flows.get(0).locations().size();
-      description = String.format(" [+%d %s]", numLocations, SonarLintUtils.pluralize("location", numLocations));
-    } else {
-      description = String.format(" [+%d flows]", flows().size());
+      int numLocations = messages.length;
+      return String.format(" [+%d %s]", numLocations, SonarLintUtils.pluralize("location", numLocations));
     }
-    return description;
+    return String.format(" [+%d flows]", flowEnds.length);
   }
 
-  public String getSummaryDescription() {
-    return summaryDescription;
+  /**
+   * Resolves the flows. Their locations get range markers when they are highlighted, or right away with {@link #createMarkers()}.
+   */
+  public synchronized List<LiveIssue.Flow> flows() {
+    if (flows == null) {
+      List<LiveIssue.Flow> rawFlows = new ArrayList<>(flowEnds.length);
+      for (int flow = 0; flow < flowEnds.length; flow++) {
+        int start = flowStart(flow);
+        List<LiveIssue.SecondaryLocation> locations = new ArrayList<>(flowEnds[flow] - start);
+        for (int i = start; i < flowEnds[flow]; i++) {
+          LocationRange range = LocationRange.deferred(file, modificationStamp, offsets[2 * i], offsets[2 * i + 1]);
+          locations.add(new LiveIssue.SecondaryLocation(range, messages[i]));
+        }
+        rawFlows.add(new LiveIssue.Flow(locations));
+      }
+      flows = MatchedFlowsAdapter.adaptFlows(rawFlows);
+    }
+    return flows;
   }
 
-  public List<LiveIssue.Flow> flows() {
-    return flows;
+  /**
+   * For files open in an editor, so that the locations follow the modifications of the document
+   */
+  public void createMarkers() {
+    flows().forEach(f -> f.locations().forEach(LiveIssue.SecondaryLocation::location));
   }
 
   public boolean hasUniqueFlow() {
-    return flows().size() == 1;
+    // flows of single locations are grouped together
+    return flowEnds.length == 1 || !hasFlowWithMoreThanOneLocation();
+  }
+
+  public int locationCount() {
+    return messages.length;
+  }
+
+  public List<String> locationMessages() {
+    return Collections.unmodifiableList(Arrays.asList(messages));
+  }
+
+  private boolean hasFlowWithMoreThanOneLocation() {
+    for (int flow = 0; flow < flowEnds.length; flow++) {
+      if (flowSize(flow) > 1) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int flowSize(int flow) {
+    return flowEnds[flow] - flowStart(flow);
+  }
+
+  private int flowStart(int flow) {
+    return flow == 0 ? 0 : flowEnds[flow - 1];
+  }
+
+  /**
+   * Collects the locations of the flows of an issue, in the order of the flows
+   */
+  public static class Builder {
+    private int[] offsets = new int[8];
+    private String[] messages = new String[4];
+    private int[] flowEnds = new int[2];
+    private int locationCount;
+    private int flowCount;
+
+    public void addLocation(int startOffset, int endOffset, @Nullable String message) {
+      if (locationCount == messages.length) {
+        offsets = Arrays.copyOf(offsets, 4 * locationCount);
+        messages = Arrays.copyOf(messages, 2 * locationCount);
+      }
+      offsets[2 * locationCount] = startOffset;
+      offsets[2 * locationCount + 1] = endOffset;
+      messages[locationCount] = message;
+      locationCount++;
+    }
+
+    public void endFlow() {
+      if (flowCount == flowEnds.length) {
+        flowEnds = Arrays.copyOf(flowEnds, 2 * flowCount);
+      }
+      flowEnds[flowCount] = locationCount;
+      flowCount++;
+    }
+
+    public void clear() {
+      locationCount = 0;
+      flowCount = 0;
+    }
+
+    /**
+     * @param modificationStamp stamp of the document in which the offsets were computed
+     * @return null if there is no flow
+     */
+    @CheckForNull
+    public IssueContext build(VirtualFile file, long modificationStamp) {
+      if (flowCount == 0) {
+        return null;
+      }
+      return new IssueContext(file, modificationStamp, Arrays.copyOf(offsets, 2 * locationCount), Arrays.copyOf(messages, locationCount),
+        Arrays.copyOf(flowEnds, flowCount));
+    }
   }
 }
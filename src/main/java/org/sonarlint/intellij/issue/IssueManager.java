@@ -19,22 +19,33 @@
  */
 package org.sonarlint.intellij.issue;
 
+import com.google.common.util.concurrent.Striped;
+import com.intellij.dvcs.repo.Repository;
+import com.intellij.dvcs.repo.VcsRepositoryManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.project.ProjectManager;
 import com.intellij.openapi.project.ProjectManagerListener;
+import com.intellij.openapi.vcs.BranchChangeListener;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
+import com.intellij.util.messages.MessageBusConnection;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 import javax.annotation.CheckForNull;
 import javax.annotation.concurrent.ThreadSafe;
@@ -46,6 +57,8 @@ import org.sonarlint.intellij.issue.tracking.Trackable;
 import org.sonarlint.intellij.issue.tracking.Tracker;
 import org.sonarlint.intellij.issue.tracking.Tracking;
 import org.sonarlint.intellij.messages.IssueStoreListener;
+import org.sonarlint.intellij.trigger.SonarLintSubmitter;
+import org.sonarlint.intellij.trigger.TriggerType;
 import org.sonarlint.intellij.util.SonarLintAppUtils;
 import org.sonarlint.intellij.util.SonarLintUtils;
 
@@ -59,7 +72,13 @@ public class IssueManager {
   private final Project myProject;
   private final LiveIssueCache liveIssueCache;
 
-  private final Lock matchingInProgress = new ReentrantLock();
+  // number of locks shared by the files, tracking of different files can run concurrently unless their locks collide
+  private static final int FILE_LOCK_STRIPES = 64;
+  private final Striped<Lock> fileLocks = Striped.lock(FILE_LOCK_STRIPES);
+  // tracking blocks on read actions and on the persistent store, so files are tracked by a few threads of their own rather
+  // than on the common pool. Idle threads are stopped.
+  private static final int TRACKING_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+  private final ThreadPoolExecutor trackingExecutor;
 
   public IssueManager(Project project) {
     this(project, new LiveIssueCache(project));
@@ -73,7 +92,15 @@ public class IssueManager {
   IssueManager(Project project, LiveIssueCache liveIssueCache) {
     myProject = project;
     this.liveIssueCache = liveIssueCache;
-    project.getMessageBus().connect().subscribe(ProjectManager.TOPIC, new ProjectManagerListener() {
+    this.trackingExecutor = new ThreadPoolExecutor(TRACKING_THREADS, TRACKING_THREADS, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+      r -> {
+        Thread t = new Thread(r, "sonarlint-issue-tracking");
+        t.setDaemon(true);
+        return t;
+      });
+    trackingExecutor.allowCoreThreadTimeOut(true);
+    MessageBusConnection busConnection = project.getMessageBus().connect();
+    busConnection.subscribe(ProjectManager.TOPIC, new ProjectManagerListener() {
       @Override
       public void projectClosing(@NotNull Project project) {
         try {
@@ -86,6 +113,54 @@ public class IssueManager {
         }
       }
     });
+    busConnection.subscribe(BranchChangeListener.VCS_BRANCH_CHANGED, new BranchChangeListener() {
+      @Override
+      public void branchWillChange(@NotNull String branchName) {
+        // nothing to do
+      }
+
+      @Override
+      public void branchHasChanged(@NotNull String branchName) {
+        switchBranch(branchName);
+      }
+    });
+    // the branch might have changed while the project was closed
+    busConnection.subscribe(VcsRepositoryManager.VCS_REPOSITORY_MAPPING_UPDATED, this::switchToCurrentBranch);
+  }
+
+  /**
+   * Switches to the branch checked out in the VCS repository of the project, once the IDE has loaded it
+   */
+  private void switchToCurrentBranch() {
+    VirtualFile baseDir = myProject.getBaseDir();
+    if (baseDir == null || myProject.isDisposed()) {
+      return;
+    }
+    Repository repository = VcsRepositoryManager.getInstance(myProject).getRepositoryForFile(baseDir);
+    String branchName = repository != null ? repository.getCurrentBranchName() : null;
+    if (branchName != null) {
+      switchBranch(branchName);
+    }
+  }
+
+  /**
+   * Swaps the persisted issues to the snapshot of the given branch, instead of tracking the issues of the new branch against
+   * the ones of the previous branch. Only the files open in editors are analyzed again.
+   */
+  public void switchBranch(String branchName) {
+    IssuePersistence store = SonarLintUtils.getService(myProject, IssuePersistence.class);
+    if (branchName.equals(store.getBranch())) {
+      return;
+    }
+    LOGGER.debug("Switching issue store to branch " + branchName);
+    try {
+      liveIssueCache.switchStore(() -> store.switchBranch(branchName));
+    } catch (Exception e) {
+      LOGGER.error("Cannot switch issues to branch " + branchName, e);
+      return;
+    }
+    myProject.getMessageBus().syncPublisher(IssueStoreListener.SONARLINT_ISSUE_STORE_TOPIC).allChanged();
+    SonarLintUtils.getService(myProject, SonarLintSubmitter.class).submitOpenFilesAuto(TriggerType.BRANCH_CHANGE);
   }
 
   public void clear() {
@@ -117,19 +192,21 @@ public class IssueManager {
     return issues != null ? issues : Collections.emptyList();
   }
 
+  /**
+   * Starts loading the previous issues of a file that is about to be analyzed, so that tracking doesn't wait on the persistent store.
+   */
+  public void prefetch(VirtualFile file) {
+    liveIssueCache.prefetch(file);
+  }
+
   private Collection<Trackable> getPreviousIssues(VirtualFile file) {
     Collection<LiveIssue> liveIssues = liveIssueCache.getLive(file);
     if (liveIssues != null) {
       return liveIssues.stream().filter(LiveIssue::isValid).collect(Collectors.toList());
     }
 
-    String storeKey = SonarLintAppUtils.getRelativePathForAnalysis(myProject, file);
-    if (storeKey == null) {
-      return Collections.emptyList();
-    }
     try {
-      IssuePersistence store = SonarLintUtils.getService(myProject, IssuePersistence.class);
-      Collection<LocalIssueTrackable> storeIssues = store.read(storeKey);
+      Collection<LocalIssueTrackable> storeIssues = liveIssueCache.getPersisted(file);
       return storeIssues != null ? Collections.unmodifiableCollection(storeIssues) : Collections.emptyList();
     } catch (IOException e) {
       LOGGER.error(String.format("Failed to read issues from store for file %s", file.getPath()), e);
@@ -149,41 +226,81 @@ public class IssueManager {
     return store.contains(storeKey);
   }
 
+  /**
+   * Tracks the issues of each file against its previous issues. Files are independent, so they are tracked in parallel, and
+   * listeners are notified once all of them are stored. Must not be called while holding a read action, as tracking acquires
+   * read actions from other threads.
+   */
   public void store(Map<VirtualFile, Collection<LiveIssue>> map) {
-    for (Map.Entry<VirtualFile, Collection<LiveIssue>> e : map.entrySet()) {
-      store(e.getKey(), e.getValue());
+    if (map.size() == 1) {
+      map.forEach(this::store);
+    } else {
+      List<Future<?>> futures = map.entrySet().stream()
+        .map(e -> trackingExecutor.submit(() -> store(e.getKey(), e.getValue())))
+        .collect(Collectors.toList());
+      awaitAll(futures);
     }
     myProject.getMessageBus().syncPublisher(IssueStoreListener.SONARLINT_ISSUE_STORE_TOPIC).filesChanged(map);
   }
 
+  private static void awaitAll(List<Future<?>> futures) {
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      futures.forEach(f -> f.cancel(false));
+      Thread.currentThread().interrupt();
+      throw new ProcessCanceledException();
+    } catch (ExecutionException e) {
+      futures.forEach(f -> f.cancel(false));
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IllegalStateException(cause);
+    }
+  }
+
   void store(VirtualFile file, final Collection<LiveIssue> rawIssues) {
-    boolean firstAnalysis = !wasAnalyzed(file);
+    Lock lock = fileLocks.get(file);
+    lock.lock();
+    try {
+      boolean firstAnalysis = !wasAnalyzed(file);
 
-    // this will also delete all existing issues in the file
-    if (firstAnalysis) {
-      // don't set creation date, as we don't know when the issue was actually created (SLI-86)
-      liveIssueCache.save(file, rawIssues);
-    } else {
-      matchWithPreviousIssues(file, rawIssues);
+      // this will also delete all existing issues in the file
+      if (firstAnalysis) {
+        // don't set creation date, as we don't know when the issue was actually created (SLI-86)
+        liveIssueCache.save(file, rawIssues);
+      } else {
+        matchWithPreviousIssues(file, rawIssues);
+      }
+    } finally {
+      lock.unlock();
     }
   }
 
   private void matchWithPreviousIssues(VirtualFile file, Collection<LiveIssue> rawIssues) {
-    matchingInProgress.lock();
     Input<Trackable> baseInput = () -> getPreviousIssues(file);
     Input<LiveIssue> rawInput = () -> rawIssues;
     updateTrackedIssues(file, baseInput, rawInput, false);
-    matchingInProgress.unlock();
   }
 
   public void matchWithServerIssues(VirtualFile file, final Collection<Trackable> serverIssues) {
-    matchingInProgress.lock();
-    Collection<LiveIssue> previousIssues = getForFile(file);
-    Input<Trackable> baseInput = () -> serverIssues;
-    Input<LiveIssue> rawInput = () -> previousIssues;
+    Lock lock = fileLocks.get(file);
+    lock.lock();
+    try {
+      Collection<LiveIssue> previousIssues = getForFile(file);
+      Input<Trackable> baseInput = () -> serverIssues;
+      Input<LiveIssue> rawInput = () -> previousIssues;
 
-    updateTrackedIssues(file, baseInput, rawInput, true);
-    matchingInProgress.unlock();
+      updateTrackedIssues(file, baseInput, rawInput, true);
+    } finally {
+      lock.unlock();
+    }
     myProject.getMessageBus().syncPublisher(IssueStoreListener.SONARLINT_ISSUE_STORE_TOPIC).fileChanged(file, liveIssueCache.getLive(file));
   }
 
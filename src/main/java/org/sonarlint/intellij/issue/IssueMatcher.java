@@ -22,7 +22,7 @@ package org.sonarlint.intellij.issue;
 import com.google.common.base.Preconditions;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
-import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -31,6 +31,10 @@ import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.PsiWhiteSpace;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueLocation;
 
@@ -51,96 +55,191 @@ public class IssueMatcher {
   }
 
   /**
-   * Tries to match an SQ issue to an IntelliJ file.
-   * <b>Can only be called with getLive access</b>.
+   * Prepares matching the locations of the issues of a file, so that its PSI file is only resolved once.
+   * The PSI tree and range markers are only used if the file is open in an editor, to avoid parsing all the files of large
+   * analyses and keeping their documents in memory.
+   * <b>Can only be called with read access</b>.
    */
-  public RangeMarker match(PsiFile file, IssueLocation issueLocation) throws NoMatchException {
+  public FileMatcher forFile(VirtualFile file) throws NoMatchException {
     ApplicationManager.getApplication().assertReadAccessAllowed();
-    Preconditions.checkArgument(issueLocation.getStartLine() != null);
-
-    PsiDocumentManager docManager = PsiDocumentManager.getInstance(project);
-    Document doc = docManager.getDocument(file);
-    if (doc == null) {
-      throw new NoMatchException("No document found for file: " + file.getName());
-    }
-
-    TextRange range = getIssueTextRange(file, doc, issueLocation);
-    return doc.createRangeMarker(range.getStartOffset(), range.getEndOffset());
+    boolean inEditor = FileEditorManager.getInstance(project).isFileOpen(file);
+    return new FileMatcher(file, findFile(file), inEditor);
   }
 
-  private static TextRange getIssueTextRange(PsiFile file, Document doc, IssueLocation issueLocation) throws NoMatchException {
-    int ijStartLine = issueLocation.getStartLine() - 1;
-    int ijEndLine = issueLocation.getEndLine() - 1;
-    int lineCount = doc.getLineCount();
-
-    if (ijStartLine >= doc.getLineCount()) {
-      throw new NoMatchException("Start line number (" + ijStartLine + ") larger than lines in file: " + lineCount);
-    }
-    if (ijEndLine >= doc.getLineCount()) {
-      throw new NoMatchException("End line number (" + ijStartLine + ") larger than lines in file: " + lineCount);
+  /**
+   * Matches SQ issue locations to ranges of an IntelliJ file. The document and the offsets of its lines are read once for all
+   * the locations, and location ranges are created together once all the locations of the file are matched.
+   * <b>Can only be used with read access</b>.
+   */
+  public class FileMatcher {
+    private final VirtualFile virtualFile;
+    private final PsiFile file;
+    private final boolean inEditor;
+    private Document doc;
+    private CharSequence text;
+    private int[] lineStartOffsets;
+    private int[] lineEndOffsets;
+
+    private FileMatcher(VirtualFile virtualFile, PsiFile file, boolean inEditor) {
+      this.virtualFile = virtualFile;
+      this.file = file;
+      this.inEditor = inEditor;
     }
 
-    int rangeEnd = findEndLineOffset(doc, ijEndLine, issueLocation.getEndLineOffset());
-    int rangeStart = findStartLineOffset(file, doc, ijStartLine, issueLocation.getStartLineOffset(), rangeEnd);
-
-    if (rangeEnd < rangeStart) {
-      throw new NoMatchException("Invalid text range  (start: " + rangeStart + ", end: " + rangeEnd);
+    public PsiFile psiFile() {
+      return file;
     }
-    return new TextRange(rangeStart, rangeEnd);
-  }
-
-  private static int findEndLineOffset(Document doc, int ijLine, @Nullable Integer endOffset) {
-    int lineEnd = doc.getLineEndOffset(ijLine);
-    int lineStart = doc.getLineStartOffset(ijLine);
-    int lineLength = lineEnd - lineStart;
 
-    if (endOffset == null || endOffset > lineLength) {
-      return lineEnd;
+    public boolean isInEditor() {
+      return inEditor;
     }
 
-    return lineStart + endOffset;
-  }
-
-  private static int findStartLineOffset(PsiFile file, Document doc, int ijLine, @Nullable Integer startOffset, int rangeEnd) {
-    int ijStartOffset = (startOffset == null) ? 0 : startOffset;
-    int lineStart = doc.getLineStartOffset(ijLine);
-    int rangeStart = lineStart + ijStartOffset;
-
-    if (rangeStart >= rangeEnd) {
-      // we passed end
-      return rangeEnd;
+    /**
+     * The document the locations were matched in, null if nothing was matched
+     */
+    @CheckForNull
+    public Document document() {
+      return doc;
     }
 
-    if (ijStartOffset != 0) {
-      // this is a precise issue location, accept it as it is
-      return rangeStart;
+    public TextRange match(IssueLocation issueLocation) throws NoMatchException {
+      Preconditions.checkArgument(issueLocation.getStartLine() != null);
+      readLines();
+      return getIssueTextRange(issueLocation);
     }
 
-    // probably not precise issue location. Try to match next element if it's whitespace.
-    PsiElement el = file.getViewProvider().findElementAt(rangeStart);
+    /**
+     * Range markers are only created right away for a file open in an editor, other files only keep the offsets
+     */
+    public List<LocationRange> createRanges(List<TextRange> ranges) {
+      if (ranges.isEmpty()) {
+        return Collections.emptyList();
+      }
+      // ranges were matched, so the document was read
+      List<LocationRange> locationRanges = new ArrayList<>(ranges.size());
+      for (TextRange range : ranges) {
+        if (inEditor) {
+          locationRanges.add(LocationRange.of(doc.createRangeMarker(range.getStartOffset(), range.getEndOffset())));
+        } else {
+          locationRanges.add(LocationRange.deferred(virtualFile, doc, range.getStartOffset(), range.getEndOffset()));
+        }
+      }
+      return locationRanges;
+    }
 
-    if (!(el instanceof PsiWhiteSpace)) {
-      return rangeStart;
+    private void readLines() throws NoMatchException {
+      if (doc != null) {
+        return;
+      }
+      Document document = PsiDocumentManager.getInstance(project).getDocument(file);
+      if (document == null) {
+        throw new NoMatchException("No document found for file: " + file.getName());
+      }
+      int lineCount = document.getLineCount();
+      lineStartOffsets = new int[lineCount];
+      lineEndOffsets = new int[lineCount];
+      for (int line = 0; line < lineCount; line++) {
+        lineStartOffsets[line] = document.getLineStartOffset(line);
+        lineEndOffsets[line] = document.getLineEndOffset(line);
+      }
+      text = document.getImmutableCharSequence();
+      doc = document;
     }
 
-    PsiElement next = el.getNextSibling();
-    if (next == null) {
-      return rangeStart;
+    private TextRange getIssueTextRange(IssueLocation issueLocation) throws NoMatchException {
+      int ijStartLine = issueLocation.getStartLine() - 1;
+      int ijEndLine = issueLocation.getEndLine() - 1;
+      int lineCount = lineStartOffsets.length;
+
+      if (ijStartLine >= lineCount) {
+        throw new NoMatchException("Start line number (" + ijStartLine + ") larger than lines in file: " + lineCount);
+      }
+      if (ijEndLine >= lineCount) {
+        throw new NoMatchException("End line number (" + ijStartLine + ") larger than lines in file: " + lineCount);
+      }
+
+      int rangeEnd = findEndLineOffset(ijEndLine, issueLocation.getEndLineOffset());
+      int rangeStart = findStartLineOffset(ijStartLine, issueLocation.getStartLineOffset(), rangeEnd);
+
+      if (rangeEnd < rangeStart) {
+        throw new NoMatchException("Invalid text range  (start: " + rangeStart + ", end: " + rangeEnd);
+      }
+      return new TextRange(rangeStart, rangeEnd);
     }
 
-    int nextRangeStart = next.getTextRange().getStartOffset();
+    private int findEndLineOffset(int ijLine, @Nullable Integer endOffset) {
+      int lineEnd = lineEndOffsets[ijLine];
+      int lineStart = lineStartOffsets[ijLine];
+      int lineLength = lineEnd - lineStart;
 
-    if (nextRangeStart >= rangeEnd) {
-      // we passed the end, don't use it
-      return rangeStart;
+      if (endOffset == null || endOffset > lineLength) {
+        return lineEnd;
+      }
+
+      return lineStart + endOffset;
     }
 
-    if (doc.getLineNumber(nextRangeStart) != ijLine) {
-      // we got to another line, don't use it
-      return rangeStart;
+    private int findStartLineOffset(int ijLine, @Nullable Integer startOffset, int rangeEnd) {
+      int ijStartOffset = (startOffset == null) ? 0 : startOffset;
+      int lineStart = lineStartOffsets[ijLine];
+      int rangeStart = lineStart + ijStartOffset;
+
+      if (rangeStart >= rangeEnd) {
+        // we passed end
+        return rangeEnd;
+      }
+
+      if (ijStartOffset != 0) {
+        // this is a precise issue location, accept it as it is
+        return rangeStart;
+      }
+
+      // probably not precise issue location. Try to skip leading whitespaces.
+      if (!inEditor) {
+        return skipWhitespaces(ijLine, rangeStart, rangeEnd);
+      }
+      PsiElement el = file.getViewProvider().findElementAt(rangeStart);
+
+      if (!(el instanceof PsiWhiteSpace)) {
+        return rangeStart;
+      }
+
+      PsiElement next = el.getNextSibling();
+      if (next == null) {
+        return rangeStart;
+      }
+
+      int nextRangeStart = next.getTextRange().getStartOffset();
+
+      if (nextRangeStart >= rangeEnd) {
+        // we passed the end, don't use it
+        return rangeStart;
+      }
+
+      if (nextRangeStart > lineEndOffsets[ijLine]) {
+        // we got to another line, don't use it
+        return rangeStart;
+      }
+
+      return nextRangeStart;
     }
 
-    return nextRangeStart;
+    /**
+     * Text-only equivalent of skipping a {@link PsiWhiteSpace} element, without parsing the file: the whitespaces are skipped
+     * if the text following them starts before the end of the range, and at most at the end of the line
+     */
+    private int skipWhitespaces(int ijLine, int rangeStart, int rangeEnd) {
+      int limit = Math.min(rangeEnd, lineEndOffsets[ijLine] + 1);
+      int offset = rangeStart;
+      while (offset < limit && Character.isWhitespace(text.charAt(offset))) {
+        offset++;
+      }
+      if (offset >= limit) {
+        // we passed the end or got to another line, don't skip them
+        return rangeStart;
+      }
+      return offset;
+    }
   }
 
   public static class NoMatchException extends Exception {
@@ -21,10 +21,11 @@ package org.sonarlint.intellij.issue;
 
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
-import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import java.util.ArrayList;
@@ -32,12 +33,12 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.sonarlint.intellij.analysis.AnalysisCallback;
 import org.sonarlint.intellij.analysis.SonarLintJob;
 import org.sonarlint.intellij.core.ServerIssueUpdater;
@@ -60,20 +61,43 @@ public class IssueProcessor {
     this.myProject = project;
   }
 
-  public void process(final SonarLintJob job, ProgressIndicator indicator, final Collection<Issue> rawIssues, Collection<ClientInputFile> failedAnalysisFiles) {
+  /**
+   * Clears the issues of the files of a job that won't be analyzed. Called before the issues of the analyzed files are stored, so
+   * that a file both cleared and analyzed keeps its new issues.
+   */
+  public void clearIssues(SonarLintJob job) {
+    if (!job.filesToClearIssues().isEmpty()) {
+      SonarLintUtils.getService(myProject, IssueManager.class).clear(job.filesToClearIssues());
+    }
+  }
+
+  /**
+   * Converts, tracks and publishes the issues of files whose analysis is complete, without waiting for the other files of the job.
+   * If the job is canceled afterwards, these issues are kept, since they come from a complete analysis of these files, but the
+   * callback of the job is not called.
+   */
+  public Map<VirtualFile, Collection<LiveIssue>> processFiles(Collection<VirtualFile> files, Collection<Issue> rawIssues,
+    Collection<ClientInputFile> failedAnalysisFiles) {
     long start = System.currentTimeMillis();
     IssueManager manager = SonarLintUtils.getService(myProject, IssueManager.class);
-    Map<VirtualFile, Collection<LiveIssue>> transformedIssues = ReadAction.compute(() -> {
-      manager.clear(job.filesToClearIssues());
-      Map<VirtualFile, Collection<LiveIssue>> issues = transformIssues(rawIssues, job.allFiles().collect(toList()), failedAnalysisFiles);
-      // this might be updated later after tracking with server issues
-      manager.store(issues);
-      return issues;
-    });
+    Map<VirtualFile, Collection<LiveIssue>> transformedIssues = ReadAction.compute(() -> transformIssues(rawIssues, files, failedAnalysisFiles));
+    // this might be updated later after tracking with server issues. Files are tracked in parallel, outside of the read action
+    manager.store(transformedIssues);
+
+    String issueStr = SonarLintUtils.pluralize("issue", rawIssues.size());
+    SonarLintConsole.get(myProject).debug(String.format("Processed %d %s in %d ms", rawIssues.size(), issueStr, System.currentTimeMillis() - start));
+    return transformedIssues;
+  }
 
+  /**
+   * Completes a job once its issues were cleared with {@link #clearIssues} and the issues of all its files were processed with
+   * {@link #processFiles}.
+   */
+  public void process(final SonarLintJob job, ProgressIndicator indicator, Map<VirtualFile, Collection<LiveIssue>> transformedIssues,
+    Collection<ClientInputFile> failedAnalysisFiles) {
     Set<VirtualFile> failedVirtualFiles = asVirtualFiles(failedAnalysisFiles);
     if (!failedVirtualFiles.containsAll(job.allFiles().collect(toList()))) {
-      logFoundIssuesIfAny(rawIssues, start, transformedIssues);
+      logFoundIssuesIfAny(transformedIssues);
     }
 
     if (shouldUpdateServerIssues(job.trigger())) {
@@ -102,11 +126,8 @@ public class IssueProcessor {
     return failedAnalysisFiles.stream().map(f -> (VirtualFile) f.getClientObject()).collect(Collectors.toSet());
   }
 
-  private void logFoundIssuesIfAny(Collection<Issue> rawIssues, long start, Map<VirtualFile, Collection<LiveIssue>> transformedIssues) {
-    String issueStr = SonarLintUtils.pluralize("issue", rawIssues.size());
+  private void logFoundIssuesIfAny(Map<VirtualFile, Collection<LiveIssue>> transformedIssues) {
     SonarLintConsole console = SonarLintConsole.get(myProject);
-    console.debug(String.format("Processed %d %s in %d ms", rawIssues.size(), issueStr, System.currentTimeMillis() - start));
-
     long issuesToShow = transformedIssues.values().stream()
       .mapToLong(Collection::size)
       .sum();
@@ -150,6 +171,7 @@ public class IssueProcessor {
     Collection<ClientInputFile> failedAnalysisFiles) {
 
     Map<VirtualFile, Collection<LiveIssue>> map = removeFailedFiles(analyzed, failedAnalysisFiles);
+    Map<VirtualFile, List<Issue>> issuesPerFile = new LinkedHashMap<>();
 
     for (Issue issue : issues) {
       ClientInputFile inputFile = issue.getInputFile();
@@ -159,59 +181,120 @@ public class IssueProcessor {
       }
       VirtualFile vFile = inputFile.getClientObject();
       if (!vFile.isValid() || !map.containsKey(vFile)) {
-        // file is no longer valid (might have been deleted meanwhile) or there has been an error matching an issue in it
+        // file is no longer valid (might have been deleted meanwhile)
         continue;
       }
+      issuesPerFile.computeIfAbsent(vFile, f -> new ArrayList<>()).add(issue);
+    }
+
+    for (Map.Entry<VirtualFile, List<Issue>> e : issuesPerFile.entrySet()) {
+      VirtualFile vFile = e.getKey();
       try {
-        LiveIssue toStore = transformIssue(issue, inputFile);
-        map.get(vFile).add(toStore);
-      } catch (IssueMatcher.NoMatchException e) {
+        map.get(vFile).addAll(transformFileIssues(vFile, e.getValue()));
+      } catch (IssueMatcher.NoMatchException ex) {
         // File content is likely to have changed during the analysis, should be fixed in next analysis
-        SonarLintConsole.get(myProject).debug("Failed to find location of issue for file: '" + vFile.getName() + "'. The file won't be refreshed - " + e.getMessage());
+        SonarLintConsole.get(myProject).debug("Failed to find location of issue for file: '" + vFile.getName() + "'. The file won't be refreshed - " + ex.getMessage());
         map.remove(vFile);
+      }
+    }
+
+    return map;
+  }
+
+  /**
+   * Matches the locations of all the issues of a file, then creates their ranges in one batch
+   */
+  private List<LiveIssue> transformFileIssues(VirtualFile file, List<Issue> issues) throws IssueMatcher.NoMatchException {
+    IssueMatcher.FileMatcher fileMatcher = matcher.forFile(file);
+    List<TextRange> ranges = new ArrayList<>();
+    List<MatchedIssue> matchedIssues = new ArrayList<>(issues.size());
+
+    for (Issue issue : issues) {
+      try {
+        matchedIssues.add(matchIssue(fileMatcher, issue, ranges));
+      } catch (IssueMatcher.NoMatchException e) {
+        throw e;
       } catch (Exception e) {
         LOGGER.error("Error finding location for issue", e);
       }
     }
 
-    return map;
+    List<LocationRange> locationRanges = fileMatcher.createRanges(ranges);
+    PsiFile psiFile = fileMatcher.psiFile();
+    Document document = fileMatcher.document();
+    return matchedIssues.stream()
+      .map(m -> m.toLiveIssue(psiFile, document, locationRanges, fileMatcher.isInEditor()))
+      .collect(toList());
   }
 
-  private LiveIssue transformIssue(Issue issue, ClientInputFile inputFile) throws IssueMatcher.NoMatchException {
-    PsiFile psiFile = matcher.findFile(inputFile.getClientObject());
-    if (issue.getStartLine() != null) {
-      RangeMarker rangeMarker = matcher.match(psiFile, issue);
-      Optional<IssueContext> context = transformFlows(psiFile, issue.flows(), issue.getRuleKey());
-      return new LiveIssue(issue, psiFile, rangeMarker, context.orElse(null));
-    } else {
-      return new LiveIssue(issue, psiFile);
+  private MatchedIssue matchIssue(IssueMatcher.FileMatcher fileMatcher, Issue issue, List<TextRange> ranges) throws IssueMatcher.NoMatchException {
+    if (issue.getStartLine() == null) {
+      return new MatchedIssue(issue, MatchedIssue.NO_RANGE, null);
     }
+    TextRange range = fileMatcher.match(issue);
+    IssueContext context = matchFlows(fileMatcher, issue.flows(), issue.getRuleKey());
+    ranges.add(range);
+    return new MatchedIssue(issue, ranges.size() - 1, context);
   }
 
-  private Optional<IssueContext> transformFlows(PsiFile psiFile, List<Issue.Flow> flows, String rule) {
-    List<LiveIssue.Flow> matchedFlows = new LinkedList<>();
+  /**
+   * Secondary locations are only kept as offsets until they are displayed. If a location fails unexpectedly, flows are dropped.
+   */
+  @CheckForNull
+  private IssueContext matchFlows(IssueMatcher.FileMatcher fileMatcher, List<Issue.Flow> flows, String rule) {
+    if (flows.isEmpty()) {
+      return null;
+    }
+    IssueContext.Builder context = new IssueContext.Builder();
 
     for (Issue.Flow f : flows) {
-      List<LiveIssue.SecondaryLocation> matchedLocations = new LinkedList<>();
       for (IssueLocation loc : f.locations()) {
         try {
-          RangeMarker range = matcher.match(psiFile, loc);
-          matchedLocations.add(new LiveIssue.SecondaryLocation(range, loc.getMessage()));
+          TextRange range = fileMatcher.match(loc);
+          context.addLocation(range.getStartOffset(), range.getEndOffset(), loc.getMessage());
         } catch (IssueMatcher.NoMatchException e) {
           // File content is likely to have changed during the analysis, should be fixed in next analysis
           SonarLintConsole.get(myProject)
-            .debug("Failed to find secondary location of issue for file: '" + psiFile.getName() + "'. The location won't be displayed - " + e.getMessage());
+            .debug("Failed to find secondary location of issue for file: '" + fileMatcher.psiFile().getName() + "'. The location won't be displayed - "
+              + e.getMessage());
         } catch (Exception e) {
           LOGGER.error("Error finding secondary location for issue", e, rule,
             String.valueOf(loc.getStartLine()), String.valueOf(loc.getStartLineOffset()), String.valueOf(loc.getEndLine()), String.valueOf(loc.getEndLineOffset()));
-          return Optional.empty();
+          return null;
         }
       }
-      LiveIssue.Flow matchedFlow = new LiveIssue.Flow(matchedLocations);
-      matchedFlows.add(matchedFlow);
+      context.endFlow();
+    }
 
+    // locations were matched, so the document was read
+    Document document = fileMatcher.document();
+    return document != null ? context.build(fileMatcher.psiFile().getVirtualFile(), document.getModificationStamp()) : null;
+  }
+
+  /**
+   * An issue whose locations are matched, waiting for the ranges of its file to be created
+   */
+  private static class MatchedIssue {
+    private static final int NO_RANGE = -1;
+    private final Issue issue;
+    private final int range;
+    @Nullable
+    private final IssueContext context;
+
+    MatchedIssue(Issue issue, int range, @Nullable IssueContext context) {
+      this.issue = issue;
+      this.range = range;
+      this.context = context;
     }
 
-    return MatchedFlowsAdapter.adapt(matchedFlows);
+    LiveIssue toLiveIssue(PsiFile psiFile, @Nullable Document document, List<LocationRange> locationRanges, boolean inEditor) {
+      if (range == NO_RANGE || document == null) {
+        return new LiveIssue(issue, psiFile);
+      }
+      if (context != null && inEditor) {
+        context.createMarkers();
+      }
+      return new LiveIssue(issue, psiFile, document, locationRanges.get(range), context);
+    }
   }
 }
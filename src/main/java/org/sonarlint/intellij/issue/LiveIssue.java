@@ -22,30 +22,35 @@ package org.sonarlint.intellij.issue;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.RangeMarker;
-import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiFile;
-import java.security.MessageDigest;
 import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.CheckForNull;
 import javax.annotation.Nullable;
-import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.codec.digest.DigestUtils;
 import org.sonarlint.intellij.issue.tracking.Trackable;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-
 public class LiveIssue implements Trackable {
   private static final AtomicLong UID_GEN = new AtomicLong();
-  private static final MessageDigest MD5_DIGEST = DigestUtils.getMd5Digest();
 
   private final long uid;
-  private final RangeMarker range;
+  // null for file level issues
+  @Nullable
+  private final LocationRange range;
   private final PsiFile psiFile;
-  private final Integer textRangeHash;
-  private final Integer lineHash;
+  // text of the line and of the range when the issue was created, starting at snapshotOffset in the document. Kept until both
+  // hashes are computed from it, without retaining the whole text of the document.
+  @Nullable
+  private String textSnapshot;
+  private final int snapshotOffset;
+  private final int rangeStartOffset;
+  private final int rangeEndOffset;
+  private final int line;
+  private final int lineStartOffset;
+  private final int lineEndOffset;
+  private Integer textRangeHash;
+  private Integer lineHash;
   private final String ruleName;
   private final String message;
   private final String ruleKey;
@@ -64,6 +69,13 @@ public class LiveIssue implements Trackable {
   }
 
   public LiveIssue(Issue issue, PsiFile psiFile, @Nullable RangeMarker range, @Nullable IssueContext context) {
+    this(issue, psiFile, range != null ? range.getDocument() : null, range != null ? LocationRange.of(range) : null, context);
+  }
+
+  /**
+   * @param document the document in which the range was computed, needed if there is a range
+   */
+  public LiveIssue(Issue issue, PsiFile psiFile, @Nullable Document document, @Nullable LocationRange range, @Nullable IssueContext context) {
     this.range = range;
     this.message = issue.getMessage();
     this.ruleKey = issue.getRuleKey();
@@ -75,24 +87,29 @@ public class LiveIssue implements Trackable {
     this.uid = UID_GEN.getAndIncrement();
     this.context = context;
 
-    if (range != null) {
-      Document document = range.getDocument();
-      this.textRangeHash = checksum(document.getText(new TextRange(range.getStartOffset(), range.getEndOffset())));
-
-      int line = range.getDocument().getLineNumber(range.getStartOffset());
-      int lineStartOffset = document.getLineStartOffset(line);
-      int lineEndOffset = document.getLineEndOffset(line);
-      this.lineHash = checksum(document.getText(new TextRange(lineStartOffset, lineEndOffset)));
+    if (range != null && document != null) {
+      this.rangeStartOffset = range.getStartOffset();
+      this.rangeEndOffset = range.getEndOffset();
+
+      this.line = document.getLineNumber(rangeStartOffset);
+      this.lineStartOffset = document.getLineStartOffset(line);
+      this.lineEndOffset = document.getLineEndOffset(line);
+      // hashes are computed from this snapshot only if tracking needs them
+      this.snapshotOffset = Math.min(lineStartOffset, rangeStartOffset);
+      this.textSnapshot = document.getImmutableCharSequence()
+        .subSequence(snapshotOffset, Math.max(lineEndOffset, rangeEndOffset))
+        .toString();
     } else {
-      this.textRangeHash = null;
-      this.lineHash = null;
+      this.textSnapshot = null;
+      this.snapshotOffset = 0;
+      this.rangeStartOffset = 0;
+      this.rangeEndOffset = 0;
+      this.line = 0;
+      this.lineStartOffset = 0;
+      this.lineEndOffset = 0;
     }
   }
 
-  private static int checksum(String content) {
-    return Hex.encodeHexString(MD5_DIGEST.digest(content.replaceAll("[\\s]", "").getBytes(UTF_8))).hashCode();
-  }
-
   public boolean isValid() {
     if (!psiFile.isValid()) {
       return false;
@@ -101,15 +118,49 @@ public class LiveIssue implements Trackable {
     return range == null || range.isValid();
   }
 
+  public boolean isFileLevel() {
+    return range == null;
+  }
+
   @Override
   public Integer getLine() {
-    if (range != null && isValid()) {
-      return ApplicationManager.getApplication().<Integer>runReadAction(() -> range.getDocument().getLineNumber(range.getStartOffset()) + 1);
+    // doesn't depend on the PSI, which is invalidated when the project is closed, before the last issues are saved
+    if (range != null && range.isValid()) {
+      RangeMarker marker = range.existingMarker();
+      if (marker == null) {
+        // the file didn't change since the issue was created
+        return line + 1;
+      }
+      return ApplicationManager.getApplication().<Integer>runReadAction(() -> marker.getDocument().getLineNumber(marker.getStartOffset()) + 1);
     }
 
     return null;
   }
 
+  /**
+   * Offset of the start of the issue in its file, 0 for file level issues. Doesn't create a range marker.
+   */
+  public int getStartOffset() {
+    return range != null ? range.getStartOffset() : 0;
+  }
+
+  /**
+   * Offset of the start of the issue in its line, 0 for file level issues. Doesn't create a range marker.
+   */
+  public int getStartLineOffset() {
+    if (range == null) {
+      return 0;
+    }
+    RangeMarker marker = range.existingMarker();
+    if (marker == null) {
+      return rangeStartOffset - lineStartOffset;
+    }
+    return ApplicationManager.getApplication().<Integer>runReadAction(() -> {
+      Document doc = marker.getDocument();
+      return marker.getStartOffset() - doc.getLineStartOffset(doc.getLineNumber(marker.getStartOffset()));
+    });
+  }
+
   @Override
   public String getAssignee() {
     return assignee;
@@ -121,15 +172,36 @@ public class LiveIssue implements Trackable {
   }
 
   @Override
-  public Integer getTextRangeHash() {
+  public synchronized Integer getTextRangeHash() {
+    if (textRangeHash == null && textSnapshot != null) {
+      textRangeHash = Checksum.of(textSnapshot, rangeStartOffset - snapshotOffset, rangeEndOffset - snapshotOffset);
+      releaseSnapshotIfHashed();
+    }
     return textRangeHash;
   }
 
   @Override
-  public Integer getLineHash() {
+  public synchronized Integer getLineHash() {
+    if (lineHash == null && textSnapshot != null) {
+      lineHash = Checksum.of(textSnapshot, lineStartOffset - snapshotOffset, lineEndOffset - snapshotOffset);
+      releaseSnapshotIfHashed();
+    }
     return lineHash;
   }
 
+  private void releaseSnapshotIfHashed() {
+    if (textRangeHash != null && lineHash != null) {
+      textSnapshot = null;
+    }
+  }
+
+  /**
+   * Number of characters of text kept until the hashes are computed, 0 once they are
+   */
+  public synchronized int snapshotLength() {
+    return textSnapshot != null ? textSnapshot.length() : 0;
+  }
+
   @Override
   public String getRuleKey() {
     return ruleKey;
@@ -139,9 +211,13 @@ public class LiveIssue implements Trackable {
     return uid;
   }
 
+  /**
+   * Range marker of the issue, created if the issue only had offsets so far. Null for file level issues, or if the file
+   * changed since the issue was created without a marker.
+   */
   @CheckForNull
   public RangeMarker getRange() {
-    return range;
+    return range != null ? range.marker() : null;
   }
 
   public PsiFile psiFile() {
@@ -223,10 +299,14 @@ public class LiveIssue implements Trackable {
   }
 
   public static class SecondaryLocation {
-    private final RangeMarker location;
+    private final LocationRange location;
     private final String message;
 
     public SecondaryLocation(RangeMarker location, @Nullable String message) {
+      this(LocationRange.of(location), message);
+    }
+
+    public SecondaryLocation(LocationRange location, @Nullable String message) {
       this.location = location;
       this.message = message;
     }
@@ -236,8 +316,16 @@ public class LiveIssue implements Trackable {
       return message;
     }
 
+    /**
+     * Range marker of the location, created if needed. Null if the file changed since the location was created without a marker.
+     */
+    @CheckForNull
     public RangeMarker location() {
-      return location;
+      return location.marker();
+    }
+
+    public int startOffset() {
+      return location.getStartOffset();
     }
   }
 }
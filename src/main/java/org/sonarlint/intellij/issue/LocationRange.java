@@ -0,0 +1,130 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
+
+/**
+ * Text range of an issue location. A {@link RangeMarker} keeps the document of its file loaded and is updated on each of its
+ * changes, so for files that are not open in an editor only the offsets are kept, together with the modification stamp of
+ * the document they were computed on. The marker is created when the range is first needed in an editor, provided that the
+ * file didn't change meanwhile. Otherwise the range is outdated and no longer valid, until the file is analyzed again.
+ */
+public final class LocationRange {
+  // only needed to create the marker, so null when created with one
+  @Nullable
+  private final VirtualFile file;
+  private final int startOffset;
+  private final int endOffset;
+  private final long modificationStamp;
+  @Nullable
+  private RangeMarker marker;
+  private boolean outdated;
+
+  private LocationRange(@Nullable VirtualFile file, int startOffset, int endOffset, long modificationStamp, @Nullable RangeMarker marker) {
+    this.file = file;
+    this.startOffset = startOffset;
+    this.endOffset = endOffset;
+    this.modificationStamp = modificationStamp;
+    this.marker = marker;
+  }
+
+  public static LocationRange of(RangeMarker marker) {
+    return new LocationRange(null, marker.getStartOffset(), marker.getEndOffset(), 0, marker);
+  }
+
+  /**
+   * Offsets in the given document of the file, turned into a marker only when needed
+   */
+  public static LocationRange deferred(VirtualFile file, Document document, int startOffset, int endOffset) {
+    return deferred(file, document.getModificationStamp(), startOffset, endOffset);
+  }
+
+  public static LocationRange deferred(VirtualFile file, long modificationStamp, int startOffset, int endOffset) {
+    return new LocationRange(file, startOffset, endOffset, modificationStamp, null);
+  }
+
+  /**
+   * The range marker, created from the offsets if it doesn't exist yet. Loads the document of the file.
+   * Returns null if the file changed since the offsets were computed.
+   */
+  @CheckForNull
+  public synchronized RangeMarker marker() {
+    if (marker == null && isUpToDate()) {
+      marker = ApplicationManager.getApplication().<RangeMarker>runReadAction(this::createMarker);
+    }
+    return marker;
+  }
+
+  @CheckForNull
+  private RangeMarker createMarker() {
+    Document document = FileDocumentManager.getInstance().getDocument(file);
+    if (document == null || document.getModificationStamp() != modificationStamp) {
+      outdated = true;
+      return null;
+    }
+    return document.createRangeMarker(startOffset, endOffset);
+  }
+
+  /**
+   * Whether a marker was already created, in which case offsets and lines should be read from its document
+   */
+  @CheckForNull
+  public synchronized RangeMarker existingMarker() {
+    return marker;
+  }
+
+  public synchronized boolean isValid() {
+    if (marker != null) {
+      return marker.isValid();
+    }
+    return isUpToDate();
+  }
+
+  /**
+   * Checks the stamp of the document if it is loaded, otherwise of the file, which gets the stamp of the document when saved
+   */
+  private boolean isUpToDate() {
+    if (outdated || file == null) {
+      return false;
+    }
+    Document document = file.isValid() ? FileDocumentManager.getInstance().getCachedDocument(file) : null;
+    long stamp = document != null ? document.getModificationStamp() : file.getModificationStamp();
+    if (!file.isValid() || stamp != modificationStamp) {
+      // stamps only increase, so this range can't become up to date again
+      outdated = true;
+    }
+    return !outdated;
+  }
+
+  public synchronized int getStartOffset() {
+    return marker != null ? marker.getStartOffset() : startOffset;
+  }
+
+  public synchronized int getEndOffset() {
+    return marker != null ? marker.getEndOffset() : endOffset;
+  }
+}
@@ -23,19 +23,12 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
-import java.util.Optional;
 import java.util.stream.Collectors;
 
 import static java.util.Collections.singletonList;
 
 public class MatchedFlowsAdapter {
-  public static Optional<IssueContext> adapt(List<LiveIssue.Flow> flows) {
-    return flows.isEmpty()
-      ? Optional.empty()
-      : Optional.of(new IssueContext(adaptFlows(flows)));
-  }
-
-  private static List<LiveIssue.Flow> adaptFlows(List<LiveIssue.Flow> flows) {
+  static List<LiveIssue.Flow> adaptFlows(List<LiveIssue.Flow> flows) {
     return flows.stream().anyMatch(LiveIssue.Flow::hasMoreThanOneLocation)
       ? reverse(flows)
       : singletonList(groupToSingleFlow(flows));
@@ -44,7 +37,7 @@ public class MatchedFlowsAdapter {
   private static LiveIssue.Flow groupToSingleFlow(List<LiveIssue.Flow> flows) {
     return new LiveIssue.Flow(flows.stream()
       .flatMap(f -> f.locations().stream())
-      .sorted(Comparator.comparing(i -> i.location().getStartOffset()))
+      .sorted(Comparator.comparingInt(LiveIssue.SecondaryLocation::startOffset))
       .collect(Collectors.toList()));
   }
 
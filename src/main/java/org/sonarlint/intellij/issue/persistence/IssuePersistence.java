@@ -19,70 +19,437 @@
  */
 package org.sonarlint.intellij.issue.persistence;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import java.io.File;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 import javax.annotation.CheckForNull;
+import javax.annotation.Nullable;
 import org.sonarlint.intellij.issue.LocalIssueTrackable;
 import org.sonarlint.intellij.issue.tracking.Trackable;
 import org.sonarlint.intellij.proto.Sonarlint;
-import org.sonarsource.sonarlint.core.client.api.connected.objectstore.HashingPathMapper;
-import org.sonarsource.sonarlint.core.client.api.connected.objectstore.PathMapper;
 import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Reader;
 import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
 import org.sonarsource.sonarlint.core.client.api.util.FileUtils;
 
-public class IssuePersistence {
+public class IssuePersistence implements Disposable {
+  private static final Logger LOGGER = Logger.getInstance(IssuePersistence.class);
   private final Path storeBasePath;
-  private final IndexedObjectStore<String, Sonarlint.Issues> store;
+  // first byte of the records in the current format. Protobuf messages never start with it, since it's the tag of field 0.
+  static final int FORMAT_VERSION = 1;
+  static final String BRANCHES_DIR = "branches";
+  static final String BRANCH_FILENAME = "branch";
+  static final int MAX_BRANCH_SNAPSHOTS = 10;
+  static final String RECOVERY_JOURNAL_FILENAME = "recovery.journal";
+  static final String CORRUPTED_SUFFIX = ".corrupted";
+  // writes the issues that didn't fit in the time budget once the project is closed, without keeping the IDE from exiting
+  private static final ExecutorService JOURNAL_WRITER = Executors.newSingleThreadExecutor(r -> {
+    Thread t = new Thread(r, "sonarlint-issue-journal-writer");
+    t.setDaemon(true);
+    return t;
+  });
+  private static final Map<Path, Future<?>> PENDING_JOURNALS = new ConcurrentHashMap<>();
+  private final SegmentedObjectStore<Sonarlint.DictionaryIssues> store;
   private final Project myProject;
+  private final Reader<Sonarlint.DictionaryIssues> reader;
+  private final Writer<Sonarlint.DictionaryIssues> writer;
+  private final StoreKeyValidator<String> validator;
+  // issues saved while on the current VCS branch. The shared store only receives issues when no branch is known, so on a branch
+  // it is read-only and holds the issues saved before the first branch was known, read for files not saved on this branch yet.
+  @Nullable
+  private SegmentedObjectStore<Sonarlint.DictionaryIssues> branchStore;
+  @Nullable
+  private String branch;
 
   protected IssuePersistence(Project project) {
     myProject = project;
 
     storeBasePath = getBasePath();
     FileUtils.mkdirs(storeBasePath);
-    StoreIndex<String> index = new StringStoreIndex(storeBasePath);
-    PathMapper<String> mapper = new HashingPathMapper(storeBasePath, 2);
-    StoreKeyValidator<String> validator = new PathStoreKeyValidator(project.getBaseDir());
-    Reader<Sonarlint.Issues> reader = is -> {
+    validator = new PathStoreKeyValidator(project.getBaseDir());
+    reader = is -> {
       try {
-        return Sonarlint.Issues.parseFrom(is);
+        return readIssues(is);
       } catch (IOException e) {
         throw new IllegalStateException("Failed to read issues", e);
       }
     };
-    Writer<Sonarlint.Issues> writer = (os, issues) -> {
+    writer = (os, issues) -> {
       try {
+        os.write(FORMAT_VERSION);
         issues.writeTo(os);
       } catch (IOException e) {
         throw new IllegalStateException("Failed to save issues", e);
       }
     };
-    store = new IndexedObjectStore<>(index, mapper, reader, writer, validator);
-    store.deleteInvalid();
+    store = new SegmentedObjectStore<>(storeBasePath, reader, writer, validator);
+    migrateLegacyStore();
+    // not on the critical path of opening the project. Entries read before being validated are checked on access.
+    store.validateInBackground();
+    // the IDE knows the current branch once the VCS repositories are loaded, see IssueManager
+    openBranchStore(readBranch());
+    replayRecoveryJournal();
+  }
+
+  /**
+   * Reads a record in the current format, or in the format used before it was versioned (plain {@link Sonarlint.Issues}).
+   */
+  static Sonarlint.DictionaryIssues readIssues(InputStream is) throws IOException {
+    PushbackInputStream input = new PushbackInputStream(is);
+    int version = input.read();
+    if (version == FORMAT_VERSION) {
+      return Sonarlint.DictionaryIssues.parseFrom(input);
+    }
+    if (version != -1) {
+      input.unread(version);
+    }
+    return transform(Sonarlint.Issues.parseFrom(input));
+  }
+
+  /**
+   * Moves issues persisted with one file per key (see {@link LegacyIssueStoreReader}) into the segmented store, and deletes the old files.
+   */
+  private void migrateLegacyStore() {
+    if (!LegacyIssueStoreReader.exists(storeBasePath)) {
+      return;
+    }
+    LegacyIssueStoreReader legacyStore = new LegacyIssueStoreReader(storeBasePath);
+    int counter = 0;
+    try {
+      for (String key : legacyStore.keys()) {
+        Optional<Sonarlint.Issues> issues = legacyStore.read(key);
+        if (issues.isPresent()) {
+          store.write(key, transform(issues.get()));
+          counter++;
+        }
+      }
+    } catch (Exception e) {
+      LOGGER.warn("Failed to migrate the issue store, previous issues will be discarded", e);
+    }
+    LOGGER.debug(String.format("%d entries migrated to the segmented issue store", counter));
+
+    try (DirectoryStream<Path> children = Files.newDirectoryStream(storeBasePath)) {
+      for (Path child : children) {
+        if (!child.getFileName().toString().equals(SegmentedObjectStore.SEGMENTS_DIR)) {
+          FileUtils.deleteRecursively(child);
+        }
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Failed to delete the previous issue store", e);
+    }
+  }
+
+  /**
+   * Switches to the snapshot of the given VCS branch. Issues saved from now on only go to this snapshot, while files that were
+   * not saved on this branch yet are read from the shared store, so that the issues saved before branches were known are not
+   * copied for each branch.
+   * Only the last {@link #MAX_BRANCH_SNAPSHOTS} branches are kept.
+   */
+  public synchronized void switchBranch(@Nullable String branchName) {
+    if (Objects.equals(branch, branchName)) {
+      return;
+    }
+    if (branchStore != null) {
+      branchStore.close();
+    }
+    openBranchStore(branchName);
+    writeBranch(branchName);
+    deleteOldBranchSnapshots();
+  }
+
+  @CheckForNull
+  public synchronized String getBranch() {
+    return branch;
+  }
+
+  private void openBranchStore(@Nullable String branchName) {
+    branch = branchName;
+    branchStore = null;
+    if (branchName == null) {
+      return;
+    }
+    Path branchPath = storeBasePath.resolve(BRANCHES_DIR).resolve(branchDirName(branchName));
+    FileUtils.mkdirs(branchPath);
+    try {
+      // used to find the snapshots used the longest time ago
+      Files.setLastModifiedTime(branchPath, FileTime.fromMillis(System.currentTimeMillis()));
+    } catch (IOException e) {
+      LOGGER.debug("Failed to touch " + branchPath, e);
+    }
+    branchStore = new SegmentedObjectStore<>(branchPath, reader, writer, validator);
+    branchStore.validateInBackground();
+  }
+
+  private static String branchDirName(String branchName) {
+    return branchName.replaceAll("[^a-zA-Z0-9._-]", "_") + "-" + Integer.toHexString(branchName.hashCode());
+  }
+
+  @CheckForNull
+  private String readBranch() {
+    Path branchFile = storeBasePath.resolve(BRANCH_FILENAME);
+    if (!Files.exists(branchFile)) {
+      return null;
+    }
+    try {
+      return new String(Files.readAllBytes(branchFile), StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      LOGGER.warn("Failed to read the branch of the issue store", e);
+      return null;
+    }
+  }
+
+  private void writeBranch(@Nullable String branchName) {
+    Path branchFile = storeBasePath.resolve(BRANCH_FILENAME);
+    try {
+      if (branchName == null) {
+        Files.deleteIfExists(branchFile);
+      } else {
+        FileUtils.mkdirs(storeBasePath);
+        Files.write(branchFile, branchName.getBytes(StandardCharsets.UTF_8));
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Failed to save the branch of the issue store", e);
+    }
+  }
+
+  synchronized void deleteOldBranchSnapshots() {
+    Path branchesPath = storeBasePath.resolve(BRANCHES_DIR);
+    if (!Files.isDirectory(branchesPath)) {
+      return;
+    }
+    List<Path> snapshots = new ArrayList<>();
+    try (DirectoryStream<Path> children = Files.newDirectoryStream(branchesPath)) {
+      children.forEach(snapshots::add);
+    } catch (IOException e) {
+      LOGGER.warn("Failed to list branch snapshots of the issue store", e);
+      return;
+    }
+    if (snapshots.size() <= MAX_BRANCH_SNAPSHOTS) {
+      return;
+    }
+    long toDelete = (long) snapshots.size() - MAX_BRANCH_SNAPSHOTS;
+    Path current = branch != null ? branchesPath.resolve(branchDirName(branch)) : null;
+    snapshots.stream()
+      .filter(p -> !p.equals(current))
+      .sorted(Comparator.comparing(p -> p.toFile().lastModified()))
+      .limit(toDelete)
+      .forEach(FileUtils::deleteRecursively);
   }
 
   public synchronized boolean contains(String key) {
-    return store.contains(key);
+    return (branchStore != null && branchStore.contains(key)) || store.contains(key);
   }
 
   public synchronized void save(String key, Collection<? extends Trackable> issues) throws IOException {
     FileUtils.mkdirs(storeBasePath);
-    store.write(key, transform(issues));
+    activeStore().write(key, transform(issues));
+  }
+
+  /**
+   * The store receiving the issues: the snapshot of the current branch if any, otherwise the shared store
+   */
+  private SegmentedObjectStore<Sonarlint.DictionaryIssues> activeStore() {
+    return branchStore != null ? branchStore : store;
+  }
+
+  /**
+   * Saves the issues of several files at once. Issues are converted in parallel and appended to the store in a single batch.
+   * Files that could not be converted within the time budget are written to a recovery journal in background instead, so that
+   * closing the project doesn't wait for them. The journal is moved to the store the next time it is opened. Conversions already
+   * started when the budget is exceeded are kept.
+   */
+  public synchronized void saveAll(Map<String, ? extends Collection<? extends Trackable>> issuesByKey, long budgetMs) throws IOException {
+    long now = System.currentTimeMillis();
+    long deadline = budgetMs > Long.MAX_VALUE - now ? Long.MAX_VALUE : (now + budgetMs);
+    Map<String, Sonarlint.DictionaryIssues> converted = new ConcurrentHashMap<>();
+    issuesByKey.entrySet().parallelStream()
+      .filter(e -> System.currentTimeMillis() < deadline)
+      .forEach(e -> converted.put(e.getKey(), transform(e.getValue())));
+
+    FileUtils.mkdirs(storeBasePath);
+    writeAll(converted);
+    if (converted.size() < issuesByKey.size()) {
+      LOGGER.warn(String.format("Time budget exceeded, issues of %d files saved in the recovery journal", issuesByKey.size() - converted.size()));
+      List<Map.Entry<String, ? extends Collection<? extends Trackable>>> remaining = issuesByKey.entrySet().stream()
+        .filter(e -> !converted.containsKey(e.getKey()))
+        .collect(Collectors.toList());
+      Path journal = storeBasePath.resolve(RECOVERY_JOURNAL_FILENAME);
+      // the writer has a single thread, so journals of the same store are written in order
+      PENDING_JOURNALS.put(journal, JOURNAL_WRITER.submit(() -> writeRecoveryJournal(journal, remaining)));
+    }
+  }
+
+  private static void writeRecoveryJournal(Path journal, Collection<? extends Map.Entry<String, ? extends Collection<? extends Trackable>>> entries) {
+    try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(journal, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+      for (Map.Entry<String, ? extends Collection<? extends Trackable>> e : entries) {
+        Sonarlint.RecoveryEntry.newBuilder()
+          .setKey(e.getKey())
+          .setIssues(toPlainIssues(e.getValue()))
+          .build()
+          .writeDelimitedTo(out);
+      }
+    } catch (IOException e) {
+      LOGGER.warn("Failed to write the recovery journal of the issue store", e);
+    }
+  }
+
+  /**
+   * Waits until the issues not saved in time in the store of the given journal are written to it
+   */
+  static void awaitRecoveryJournal(Path journal) {
+    Future<?> pending = PENDING_JOURNALS.get(journal);
+    if (pending == null) {
+      return;
+    }
+    try {
+      pending.get();
+      PENDING_JOURNALS.remove(journal, pending);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      LOGGER.warn("Failed to write the recovery journal of the issue store", e);
+    }
+  }
+
+  private static Sonarlint.Issues toPlainIssues(Collection<? extends Trackable> localIssues) {
+    Sonarlint.Issues.Builder builder = Sonarlint.Issues.newBuilder();
+    for (Trackable localIssue : localIssues) {
+      Sonarlint.Issues.Issue.Builder issue = Sonarlint.Issues.Issue.newBuilder()
+        .setRuleKey(localIssue.getRuleKey())
+        .setMessage(localIssue.getMessage())
+        .setLine(line(localIssue))
+        .setResolved(localIssue.isResolved());
+      if (localIssue.getAssignee() != null) {
+        issue.setAssignee(localIssue.getAssignee());
+      }
+      if (localIssue.getCreationDate() != null) {
+        issue.setCreationDate(localIssue.getCreationDate());
+      }
+      if (localIssue.getLineHash() != null) {
+        issue.setChecksum(localIssue.getLineHash());
+      }
+      if (localIssue.getServerIssueKey() != null) {
+        issue.setServerIssueKey(localIssue.getServerIssueKey());
+      }
+      builder.addIssue(issue);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Moves to the store the issues left in the recovery journal when the project was closed.
+   * The entries before an incomplete last entry are recovered. A journal with a corrupted entry is kept aside, so that it is
+   * neither replayed again over newer issues nor lost.
+   */
+  private void replayRecoveryJournal() {
+    Path journal = storeBasePath.resolve(RECOVERY_JOURNAL_FILENAME);
+    awaitRecoveryJournal(journal);
+    if (!Files.exists(journal)) {
+      return;
+    }
+    Map<String, Sonarlint.DictionaryIssues> recovered = new HashMap<>();
+    boolean complete;
+    try {
+      complete = readRecoveryJournal(Files.readAllBytes(journal), recovered);
+    } catch (IOException e) {
+      LOGGER.warn("Failed to read the recovery journal of the issue store", e);
+      return;
+    }
+    try {
+      writeAll(recovered);
+      if (complete) {
+        Files.delete(journal);
+      } else {
+        Files.move(journal, storeBasePath.resolve(RECOVERY_JOURNAL_FILENAME + CORRUPTED_SUFFIX), StandardCopyOption.REPLACE_EXISTING);
+      }
+      LOGGER.debug(String.format("%d entries recovered in the issue store", recovered.size()));
+    } catch (IOException e) {
+      LOGGER.warn("Failed to recover issues from the journal", e);
+    }
+  }
+
+  /**
+   * Returns false if an entry is corrupted. A truncated last entry is what is left when writing the journal was interrupted,
+   * so it is ignored.
+   */
+  private static boolean readRecoveryJournal(byte[] bytes, Map<String, Sonarlint.DictionaryIssues> recovered) {
+    CodedInputStream input = CodedInputStream.newInstance(bytes);
+    try {
+      while (!input.isAtEnd()) {
+        int remaining = bytes.length - input.getTotalBytesRead();
+        int length;
+        try {
+          length = input.readRawVarint32();
+        } catch (InvalidProtocolBufferException e) {
+          // a length is at most 5 bytes long
+          return remaining < 5;
+        }
+        if (length < 0) {
+          return false;
+        }
+        if (length > bytes.length - input.getTotalBytesRead()) {
+          LOGGER.debug("Ignoring the incomplete last entry of the recovery journal");
+          return true;
+        }
+        Sonarlint.RecoveryEntry entry = Sonarlint.RecoveryEntry.parseFrom(input.readRawBytes(length));
+        recovered.put(entry.getKey(), transform(entry.getIssues()));
+      }
+      return true;
+    } catch (IOException e) {
+      LOGGER.warn("Corrupted entry in the recovery journal of the issue store", e);
+      return false;
+    }
   }
 
+  private void writeAll(Map<String, Sonarlint.DictionaryIssues> issuesByKey) throws IOException {
+    activeStore().writeAll(issuesByKey);
+  }
+
+  /**
+   * Clears the issues of a file in the current branch and in the shared store, which would be read instead otherwise
+   */
   public synchronized void clear(String key) throws IOException {
+    if (branchStore != null) {
+      branchStore.delete(key);
+    }
     store.delete(key);
   }
 
   @CheckForNull
   public synchronized Collection<LocalIssueTrackable> read(String key) throws IOException {
-    Optional<Sonarlint.Issues> issues = store.read(key);
+    Optional<Sonarlint.DictionaryIssues> issues = branchStore != null ? branchStore.read(key) : Optional.empty();
+    if (!issues.isPresent()) {
+      issues = store.read(key);
+    }
     return issues.map(IssuePersistence::transform).orElse(null);
   }
 
@@ -93,37 +460,119 @@ public class IssuePersistence {
 
   public synchronized void clean() {
     store.deleteInvalid();
+    if (branchStore != null) {
+      branchStore.deleteInvalid();
+    }
   }
 
+  /**
+   * Clears the issues of all branches
+   */
   public synchronized void clear() {
+    store.clear();
+    if (branchStore != null) {
+      branchStore.clear();
+    }
     FileUtils.deleteRecursively(storeBasePath);
     FileUtils.mkdirs(storeBasePath);
+    writeBranch(branch);
   }
 
-  private static Collection<LocalIssueTrackable> transform(Sonarlint.Issues protoIssues) {
-    return protoIssues.getIssueList().stream()
-      .map(IssuePersistence::transform)
+  @Override
+  public synchronized void dispose() {
+    store.close();
+    if (branchStore != null) {
+      branchStore.close();
+    }
+  }
+
+  /**
+   * Converts issues of the format used before the dictionary
+   */
+  private static Sonarlint.DictionaryIssues transform(Sonarlint.Issues protoIssues) {
+    Sonarlint.DictionaryIssues.Builder builder = Sonarlint.DictionaryIssues.newBuilder();
+    Function<String, Integer> ref = dictionary(builder);
+    int previousLine = 0;
+    List<Sonarlint.Issues.Issue> sortedIssues = protoIssues.getIssueList().stream()
+      .sorted(Comparator.comparingInt(Sonarlint.Issues.Issue::getLine))
       .collect(Collectors.toList());
+    for (Sonarlint.Issues.Issue issue : sortedIssues) {
+      builder.addIssue(Sonarlint.DictionaryIssues.Issue.newBuilder()
+        .setServerIssueKey(issue.getServerIssueKey())
+        .setRuleKey(ref.apply(issue.getRuleKey()))
+        .setLineDelta(issue.getLine() - previousLine)
+        .setMessage(ref.apply(issue.getMessage()))
+        .setChecksum(issue.getChecksum())
+        .setAssignee(issue.getAssignee())
+        .setCreationDate(issue.getCreationDate())
+        .setResolved(issue.getResolved()));
+      previousLine = issue.getLine();
+    }
+    return builder.build();
   }
 
-  private static Sonarlint.Issues transform(Collection<? extends Trackable> localIssues) {
-    Sonarlint.Issues.Builder builder = Sonarlint.Issues.newBuilder();
-    localIssues.stream()
-      .map(IssuePersistence::transform)
-      .forEach(builder::addIssue);
+  private static Collection<LocalIssueTrackable> transform(Sonarlint.DictionaryIssues protoIssues) {
+    List<String> dictionary = protoIssues.getDictionaryList();
+    List<LocalIssueTrackable> issues = new ArrayList<>(protoIssues.getIssueCount());
+    int line = 0;
+    for (Sonarlint.DictionaryIssues.Issue issue : protoIssues.getIssueList()) {
+      line += issue.getLineDelta();
+      issues.add(transform(Sonarlint.Issues.Issue.newBuilder()
+        .setServerIssueKey(issue.getServerIssueKey())
+        .setRuleKey(dictionary.get(issue.getRuleKey()))
+        .setLine(line)
+        .setMessage(dictionary.get(issue.getMessage()))
+        .setChecksum(issue.getChecksum())
+        .setAssignee(issue.getAssignee())
+        .setCreationDate(issue.getCreationDate())
+        .setResolved(issue.getResolved())
+        .build()));
+    }
+    return issues;
+  }
+
+  private static Sonarlint.DictionaryIssues transform(Collection<? extends Trackable> localIssues) {
+    Sonarlint.DictionaryIssues.Builder builder = Sonarlint.DictionaryIssues.newBuilder();
+    Function<String, Integer> ref = dictionary(builder);
+
+    int previousLine = 0;
+    List<? extends Trackable> sortedIssues = localIssues.stream()
+      .sorted(Comparator.comparingInt(IssuePersistence::line))
+      .collect(Collectors.toList());
+    for (Trackable localIssue : sortedIssues) {
+      int line = line(localIssue);
+      builder.addIssue(transform(localIssue, ref, line - previousLine));
+      previousLine = line;
+    }
 
     return builder.build();
   }
 
+  /**
+   * Returns the index of a string in the dictionary of the builder, adding it the first time
+   */
+  private static Function<String, Integer> dictionary(Sonarlint.DictionaryIssues.Builder builder) {
+    Map<String, Integer> dictionary = new HashMap<>();
+    return str -> dictionary.computeIfAbsent(str, s -> {
+      int index = builder.getDictionaryCount();
+      builder.addDictionary(s);
+      return index;
+    });
+  }
+
+  private static int line(Trackable localIssue) {
+    return localIssue.getLine() != null ? localIssue.getLine() : 0;
+  }
+
   private static LocalIssueTrackable transform(Sonarlint.Issues.Issue issue) {
     return new LocalIssueTrackable(issue);
   }
 
-  @CheckForNull
-  private static Sonarlint.Issues.Issue transform(Trackable localIssue) {
-    Sonarlint.Issues.Issue.Builder builder = Sonarlint.Issues.Issue.newBuilder()
-      .setRuleKey(localIssue.getRuleKey())
-      .setMessage(localIssue.getMessage())
+  private static Sonarlint.DictionaryIssues.Issue transform(Trackable localIssue, Function<String, Integer> ref, int lineDelta) {
+    Sonarlint.DictionaryIssues.Issue.Builder builder = Sonarlint.DictionaryIssues.Issue.newBuilder()
+      .setRuleKey(ref.apply(localIssue.getRuleKey()))
+      .setMessage(ref.apply(localIssue.getMessage()))
+      .setLineDelta(lineDelta)
       .setResolved(localIssue.isResolved());
 
     if (localIssue.getAssignee() != null) {
@@ -138,9 +587,6 @@ public class IssuePersistence {
     if (localIssue.getServerIssueKey() != null) {
       builder.setServerIssueKey(localIssue.getServerIssueKey());
     }
-    if (localIssue.getLine() != null) {
-      builder.setLine(localIssue.getLine());
-    }
     return builder.build();
   }
 }
@@ -0,0 +1,63 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Optional;
+import org.sonarlint.intellij.proto.Sonarlint;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.HashingPathMapper;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.PathMapper;
+
+/**
+ * Reads the issues persisted with one file per key, as written by {@link IndexedObjectStore} before the segmented store, so that
+ * they can be migrated. It never modifies the files.
+ */
+class LegacyIssueStoreReader {
+  private final StoreIndex<String> index;
+  private final PathMapper<String> pathMapper;
+
+  LegacyIssueStoreReader(Path storeBasePath) {
+    this.index = new StringStoreIndex(storeBasePath);
+    this.pathMapper = new HashingPathMapper(storeBasePath, 2);
+  }
+
+  static boolean exists(Path storeBasePath) {
+    return storeBasePath.resolve(StringStoreIndex.INDEX_FILENAME).toFile().exists();
+  }
+
+  Collection<String> keys() {
+    return index.keys();
+  }
+
+  Optional<Sonarlint.Issues> read(String key) throws IOException {
+    Path path = pathMapper.apply(key);
+    if (!path.toFile().exists()) {
+      return Optional.empty();
+    }
+    try (InputStream is = new BufferedInputStream(Files.newInputStream(path))) {
+      return Optional.of(Sonarlint.Issues.parseFrom(is));
+    }
+  }
+}
@@ -19,124 +19,467 @@
  */
 package org.sonarlint.intellij.issue.persistence;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.io.IOException;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
 import javax.annotation.CheckForNull;
 import org.sonarlint.intellij.issue.LiveIssue;
+import org.sonarlint.intellij.issue.LocalIssueTrackable;
 import org.sonarlint.intellij.util.SonarLintAppUtils;
 import org.sonarlint.intellij.util.SonarLintUtils;
 
 public class LiveIssueCache {
   private static final Logger LOGGER = Logger.getInstance(LiveIssueCache.class);
   static final int DEFAULT_MAX_ENTRIES = 10_000;
+  static final int DEFAULT_MAX_PENDING_WRITES = 1_000;
+  static final int MAX_PERSISTED_ENTRIES = 1_000;
+  static final String MAX_MEMORY_PROPERTY_KEY = "sonarlint.issues.cache.maxMemoryMb";
+  private static final long DEFAULT_MAX_MEMORY = 100L * 1024 * 1024;
+  static final String FLUSH_BUDGET_PROPERTY_KEY = "sonarlint.issues.flushBudgetMs";
+  private static final long DEFAULT_FLUSH_BUDGET_MS = 10_000;
+  private static final long FLUSHER_IDLE_TIMEOUT_MS = 5_000;
   private final Map<VirtualFile, Collection<LiveIssue>> cache;
   private final Project myproject;
   private final int maxEntries;
+  private final long maxWeight;
+  // estimated retained size of each cached entry, and their sum
+  private final Map<VirtualFile, Long> weights = new HashMap<>();
+  private long totalWeight;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  // entries evicted from the cache but not yet persisted. They are still readable.
+  private final Map<VirtualFile, Collection<LiveIssue>> pendingWrites = new ConcurrentHashMap<>();
+  private final BlockingQueue<VirtualFile> writeQueue;
+  // evicted during the current save, to be queued once the cache monitor is released
+  private final List<VirtualFile> evicted = new ArrayList<>();
+  // serializes writes to the persistent store, so that an old version of an entry is never written after a newer one
+  private final Lock persistLock = new ReentrantLock();
+  private final Object flusherLock = new Object();
+  private Thread flusher;
+
+  // second tier: issues read from the persistent store for files not in the cache, possibly still being loaded
+  private final Map<VirtualFile, Future<Collection<LocalIssueTrackable>>> persisted = Collections.synchronizedMap(
+    new LinkedHashMap<VirtualFile, Future<Collection<LocalIssueTrackable>>>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<VirtualFile, Future<Collection<LocalIssueTrackable>>> eldest) {
+        return size() > MAX_PERSISTED_ENTRIES;
+      }
+    });
 
   public LiveIssueCache(Project project) {
     this(project, DEFAULT_MAX_ENTRIES);
   }
 
   LiveIssueCache(Project project, int maxEntries) {
+    this(project, maxEntries, DEFAULT_MAX_PENDING_WRITES, defaultMaxWeight());
+  }
+
+  LiveIssueCache(Project project, int maxEntries, int maxPendingWrites, long maxWeight) {
     this.myproject = project;
     this.maxEntries = maxEntries;
-    this.cache = new LimitedSizeLinkedHashMap();
+    this.maxWeight = maxWeight;
+    this.cache = new LinkedHashMap<>(16, 0.75f, true);
+    this.writeQueue = new ArrayBlockingQueue<>(maxPendingWrites);
   }
 
   /**
-   * Keeps a maximum number of entries in the map. On insertion, if the limit is passed, the entry accessed the longest time ago
-   * is flushed into cache and removed from the map.
+   * Heap budget of the cache, in MB, can be set with a system property. By default, it's 100MB, or 10% of the max heap if lower.
    */
-  private class LimitedSizeLinkedHashMap extends LinkedHashMap<VirtualFile, Collection<LiveIssue>> {
-    LimitedSizeLinkedHashMap() {
-      super(maxEntries, 0.75f, true);
+  private static long defaultMaxWeight() {
+    long defaultValue = Math.min(DEFAULT_MAX_MEMORY, Runtime.getRuntime().maxMemory() / 10);
+    String property = System.getProperty(MAX_MEMORY_PROPERTY_KEY);
+    if (property != null) {
+      try {
+        return Long.parseLong(property.trim()) * 1024 * 1024;
+      } catch (NumberFormatException e) {
+        LOGGER.warn("Invalid value for " + MAX_MEMORY_PROPERTY_KEY + ": " + property);
+      }
     }
+    return defaultValue;
+  }
 
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<VirtualFile, Collection<LiveIssue>> eldest) {
-      if (size() <= maxEntries) {
-        return false;
+  /**
+   * Read issues from a file that are cached, or that were evicted and are waiting to be persisted.
+   * On cache miss, it won't fallback to the persistent store.
+   */
+  @CheckForNull
+  public Collection<LiveIssue> getLive(VirtualFile virtualFile) {
+    Collection<LiveIssue> issues = lookup(virtualFile);
+    if (issues != null) {
+      hits.incrementAndGet();
+    } else {
+      misses.incrementAndGet();
+    }
+    return issues;
+  }
+
+  @CheckForNull
+  private Collection<LiveIssue> lookup(VirtualFile virtualFile) {
+    synchronized (this) {
+      Collection<LiveIssue> issues = cache.get(virtualFile);
+      if (issues != null) {
+        return issues;
+      }
+    }
+    return pendingWrites.get(virtualFile);
+  }
+
+  /**
+   * Starts loading in the background the persisted issues of a file that is not cached, so that they are
+   * available by the time the file is tracked.
+   */
+  public void prefetch(VirtualFile virtualFile) {
+    // checked under the same lock as save, which would make the prefetched issues outdated
+    synchronized (this) {
+      if (contains(virtualFile)) {
+        return;
+      }
+      persisted.computeIfAbsent(virtualFile, f -> ApplicationManager.getApplication().executeOnPooledThread(() -> readPersisted(f)));
+    }
+  }
+
+  /**
+   * Read issues of a file from the persistent store. If they are being prefetched, waits for it instead of reading them again.
+   * Returns null if there are no issues stored for the file.
+   */
+  @CheckForNull
+  public Collection<LocalIssueTrackable> getPersisted(VirtualFile virtualFile) throws IOException {
+    Future<Collection<LocalIssueTrackable>> prefetched = persisted.remove(virtualFile);
+    if (prefetched == null) {
+      return readPersisted(virtualFile);
+    }
+    try {
+      return prefetched.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return readPersisted(virtualFile);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException("Failed to read issues for " + virtualFile.getPath(), e.getCause());
+    }
+  }
+
+  @CheckForNull
+  private Collection<LocalIssueTrackable> readPersisted(VirtualFile virtualFile) throws IOException {
+    String key = createKey(virtualFile);
+    if (key == null) {
+      return null;
+    }
+    IssuePersistence store = SonarLintUtils.getService(myproject, IssuePersistence.class);
+    return store.read(key);
+  }
+
+  public void save(VirtualFile virtualFile, Collection<LiveIssue> issues) {
+    List<VirtualFile> toWrite;
+    long weight = LiveIssueWeigher.weight(issues);
+    synchronized (this) {
+      // persisted issues are now outdated
+      persisted.remove(virtualFile);
+      // a pending write of this file is superseded
+      pendingWrites.remove(virtualFile);
+      cache.put(virtualFile, Collections.unmodifiableCollection(issues));
+      Long previousWeight = weights.put(virtualFile, weight);
+      totalWeight += weight - (previousWeight != null ? previousWeight : 0);
+      evictIfNeeded();
+      if (evicted.isEmpty()) {
+        return;
       }
+      toWrite = new ArrayList<>(evicted);
+      evicted.clear();
+    }
+    toWrite.forEach(this::enqueue);
+  }
 
+  /**
+   * Evicts the entries accessed the longest time ago until both the maximum number of entries and the heap budget are respected.
+   * Evicted entries are handed over to the write-behind queue, that will persist them in the background.
+   * The entry saved last is always kept, even if it doesn't fit in the budget alone.
+   */
+  private void evictIfNeeded() {
+    Iterator<Map.Entry<VirtualFile, Collection<LiveIssue>>> it = cache.entrySet().iterator();
+    while ((cache.size() > maxEntries || totalWeight > maxWeight) && cache.size() > 1) {
+      Map.Entry<VirtualFile, Collection<LiveIssue>> eldest = it.next();
+      it.remove();
+      totalWeight -= weights.remove(eldest.getKey());
+      evictions.incrementAndGet();
       if (eldest.getKey().isValid()) {
-        String key = createKey(eldest.getKey());
-        if (key != null) {
-          try {
-            LOGGER.debug("Persisting issues for " + key);
-            IssuePersistence store = SonarLintUtils.getService(myproject, IssuePersistence.class);
-            store.save(key, eldest.getValue());
-          } catch (IOException e) {
-            throw new IllegalStateException(String.format("Error persisting issues for %s", key), e);
+        pendingWrites.put(eldest.getKey(), eldest.getValue());
+        evicted.add(eldest.getKey());
+      }
+    }
+  }
+
+  private void enqueue(VirtualFile virtualFile) {
+    try {
+      // if the flusher can't keep up, this blocks the thread saving new issues, but never the readers
+      writeQueue.put(virtualFile);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      persistPending(virtualFile);
+      return;
+    }
+    synchronized (flusherLock) {
+      if (flusher == null) {
+        flusher = new Thread(this::flushPendingWrites, "sonarlint-issue-cache-flusher-" + myproject.getName());
+        flusher.setDaemon(true);
+        flusher.start();
+      }
+    }
+  }
+
+  private void flushPendingWrites() {
+    while (true) {
+      VirtualFile virtualFile;
+      try {
+        virtualFile = writeQueue.poll(FLUSHER_IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        virtualFile = null;
+      }
+      if (virtualFile == null) {
+        synchronized (flusherLock) {
+          if (writeQueue.isEmpty()) {
+            flusher = null;
+            return;
           }
         }
+        continue;
       }
-      return true;
+      persistPending(virtualFile);
     }
   }
 
   /**
-   * Read issues from a file that are cached. On cache miss, it won't fallback to the persistent store.
+   * The entry stays readable in the pending writes until it's written. If the write fails, it's kept there, so that it's still
+   * readable and is written again by the next {@link #flushAll()}.
    */
-  @CheckForNull
-  public synchronized Collection<LiveIssue> getLive(VirtualFile virtualFile) {
-    return cache.get(virtualFile);
+  private void persistPending(VirtualFile virtualFile) {
+    persistLock.lock();
+    try {
+      Collection<LiveIssue> issues = pendingWrites.get(virtualFile);
+      if (issues != null) {
+        persist(virtualFile, issues);
+        // unless it was evicted again in the meantime, with newer issues
+        pendingWrites.remove(virtualFile, issues);
+      }
+    } catch (Exception e) {
+      LOGGER.warn("Error persisting issues for " + virtualFile.getPath(), e);
+    } finally {
+      persistLock.unlock();
+    }
   }
 
-  public synchronized void save(VirtualFile virtualFile, Collection<LiveIssue> issues) {
-    cache.put(virtualFile, Collections.unmodifiableCollection(issues));
+  private void persist(VirtualFile virtualFile, Collection<LiveIssue> issues) throws IOException {
+    if (virtualFile.isValid()) {
+      String key = createKey(virtualFile);
+      if (key != null) {
+        LOGGER.debug("Persisting issues for " + key);
+        IssuePersistence store = SonarLintUtils.getService(myproject, IssuePersistence.class);
+        store.save(key, issues);
+      }
+    }
   }
 
   /**
-   * Flushes all cached entries to disk.
+   * Flushes all cached entries and pending writes to disk, within a time budget that can be set in milliseconds with a
+   * system property. Entries that can't be saved in time are kept in a recovery journal.
    * It does not clear the cache.
    */
-  public synchronized void flushAll() {
-    LOGGER.debug("Persisting all issues");
-    cache.forEach((virtualFile, trackableIssues) -> {
-      if (virtualFile.isValid()) {
-        String key = createKey(virtualFile);
-        if (key != null) {
-          try {
-            IssuePersistence store = SonarLintUtils.getService(myproject, IssuePersistence.class);
-            store.save(key, trackableIssues);
-          } catch (IOException e) {
-            throw new IllegalStateException("Failed to flush cache", e);
-          }
-        }
+  public void flushAll() {
+    long budgetMs = Long.getLong(FLUSH_BUDGET_PROPERTY_KEY, DEFAULT_FLUSH_BUDGET_MS);
+    Map<VirtualFile, Collection<LiveIssue>> toFlush;
+    // the cache is only locked while taking a snapshot. The persist lock keeps the write-behind queue from writing
+    // older versions of these entries in the meantime. It's always acquired before the cache monitor.
+    persistLock.lock();
+    try {
+      synchronized (this) {
+        LOGGER.debug("Persisting all issues. " + getStats());
+        toFlush = snapshot();
       }
-    });
+      persistAll(toFlush, budgetMs);
+      // entries evicted again since the snapshot are newer, and stay pending
+      toFlush.forEach(pendingWrites::remove);
+    } finally {
+      persistLock.unlock();
+    }
+  }
+
+  /**
+   * Flushes all cached entries and pending writes to the current persistent store, runs the given action that replaces it
+   * (for example by switching to another VCS branch), and then empties the cache so that issues are read from the new store.
+   * The write-behind queue waits until it's done. The cache is only locked while taking the snapshot and while emptying it,
+   * so readers are not blocked by the disk accesses. Issues saved in the meantime are discarded with the rest of the cache,
+   * since they might come from either branch.
+   */
+  public void switchStore(Runnable switchAction) {
+    persistLock.lock();
+    try {
+      Map<VirtualFile, Collection<LiveIssue>> toFlush;
+      synchronized (this) {
+        toFlush = snapshot();
+      }
+      persistAll(toFlush, Long.MAX_VALUE);
+      switchAction.run();
+      synchronized (this) {
+        cache.clear();
+        weights.clear();
+        totalWeight = 0;
+        pendingWrites.clear();
+        writeQueue.clear();
+        persisted.clear();
+      }
+    } finally {
+      persistLock.unlock();
+    }
+  }
+
+  private Map<VirtualFile, Collection<LiveIssue>> snapshot() {
+    Map<VirtualFile, Collection<LiveIssue>> snapshot = new HashMap<>(pendingWrites);
+    snapshot.putAll(cache);
+    return snapshot;
+  }
+
+  private void persistAll(Map<VirtualFile, Collection<LiveIssue>> issues, long budgetMs) {
+    // computing the keys needs a read action per file, spread them across cores
+    Map<String, Collection<LiveIssue>> issuesByKey = issues.entrySet().parallelStream()
+      .filter(e -> e.getKey().isValid())
+      .map(e -> new AbstractMap.SimpleImmutableEntry<>(createKey(e.getKey()), e.getValue()))
+      .filter(e -> e.getKey() != null)
+      .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue, (first, second) -> second));
+    try {
+      IssuePersistence store = SonarLintUtils.getService(myproject, IssuePersistence.class);
+      store.saveAll(issuesByKey, budgetMs);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to flush cache", e);
+    }
   }
 
   /**
    * Clear cache and underlying persistent store
    */
-  public synchronized void clear() {
-    IssuePersistence store = SonarLintUtils.getService(myproject, IssuePersistence.class);
-    store.clear();
-    cache.clear();
+  public void clear() {
+    synchronized (this) {
+      cache.clear();
+      weights.clear();
+      totalWeight = 0;
+      pendingWrites.clear();
+      writeQueue.clear();
+      persisted.clear();
+    }
+    persistLock.lock();
+    try {
+      IssuePersistence store = SonarLintUtils.getService(myproject, IssuePersistence.class);
+      store.clear();
+    } finally {
+      persistLock.unlock();
+    }
   }
 
-  public synchronized void clear(VirtualFile virtualFile) {
+  public void clear(VirtualFile virtualFile) {
     String key = createKey(virtualFile);
     if (key != null) {
-      cache.remove(virtualFile);
+      synchronized (this) {
+        cache.remove(virtualFile);
+        Long weight = weights.remove(virtualFile);
+        if (weight != null) {
+          totalWeight -= weight;
+        }
+        pendingWrites.remove(virtualFile);
+        persisted.remove(virtualFile);
+      }
+      persistLock.lock();
       try {
         IssuePersistence store = SonarLintUtils.getService(myproject, IssuePersistence.class);
         store.clear(key);
       } catch (IOException e) {
         throw new IllegalStateException("Failed to clear cache", e);
+      } finally {
+        persistLock.unlock();
       }
     }
   }
 
-  public synchronized boolean contains(VirtualFile virtualFile) {
-    return getLive(virtualFile) != null;
+  public boolean contains(VirtualFile virtualFile) {
+    return lookup(virtualFile) != null;
+  }
+
+  public synchronized Stats getStats() {
+    return new Stats(hits.get(), misses.get(), evictions.get(), cache.size(), totalWeight, maxWeight);
+  }
+
+  public static class Stats {
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+    private final int entries;
+    private final long weight;
+    private final long maxWeight;
+
+    Stats(long hits, long misses, long evictions, int entries, long weight, long maxWeight) {
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+      this.entries = entries;
+      this.weight = weight;
+      this.maxWeight = maxWeight;
+    }
+
+    public long hits() {
+      return hits;
+    }
+
+    public long misses() {
+      return misses;
+    }
+
+    public long evictions() {
+      return evictions;
+    }
+
+    public int entries() {
+      return entries;
+    }
+
+    /**
+     * Estimated heap retained by the cached entries, in bytes
+     */
+    public long weight() {
+      return weight;
+    }
+
+    public long maxWeight() {
+      return maxWeight;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("Issue cache: %d hits, %d misses, %d evictions, %d entries using ~%d/%d KB",
+        hits, misses, evictions, entries, weight / 1024, maxWeight / 1024);
+    }
   }
 
   private String createKey(VirtualFile virtualFile) {
@@ -0,0 +1,65 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+
+import java.util.Collection;
+import javax.annotation.Nullable;
+import org.sonarlint.intellij.issue.LiveIssue;
+
+/**
+ * Rough estimation of the heap retained by the issues of a file, used to weight the entries of the {@link LiveIssueCache}.
+ * It only needs to be proportional to the real size: a file with thousands of issues must weight much more than a clean file.
+ */
+final class LiveIssueWeigher {
+  // the entry in the cache itself
+  static final long ENTRY_OVERHEAD = 100;
+  // LiveIssue with its RangeMarker, rule key, rule name, severity, type and assignee, without the text kept to compute its hashes
+  static final long ISSUE_OVERHEAD = 500;
+  // offsets and message of a secondary location, only resolved to a SecondaryLocation when displayed
+  static final long LOCATION_OVERHEAD = 20;
+  private static final long STRING_OVERHEAD = 40;
+
+  private LiveIssueWeigher() {
+    // static only
+  }
+
+  static long weight(Collection<LiveIssue> issues) {
+    long weight = ENTRY_OVERHEAD;
+    for (LiveIssue issue : issues) {
+      weight += weight(issue);
+    }
+    return weight;
+  }
+
+  private static long weight(LiveIssue issue) {
+    long weight = ISSUE_OVERHEAD + weight(issue.getMessage()) + 2L * issue.snapshotLength();
+    weight += issue.context()
+      .map(ctx -> LOCATION_OVERHEAD * ctx.locationCount() + ctx.locationMessages().stream()
+        .mapToLong(LiveIssueWeigher::weight)
+        .sum())
+      .orElse(0L);
+    return weight;
+  }
+
+  private static long weight(@Nullable String str) {
+    return str == null ? 0 : (STRING_OVERHEAD + 2L * str.length());
+  }
+}
@@ -0,0 +1,714 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import com.intellij.openapi.diagnostic.Logger;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+import javax.annotation.Nullable;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.ObjectStore;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Reader;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
+import org.sonarsource.sonarlint.core.client.api.util.FileUtils;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A log-structured ObjectStore. Values are appended to a few segment files instead of having one file per key, and
+ * found through an in-memory table of offsets that is rebuilt by replaying the segments the first time the store is accessed.
+ * <p>
+ * Only the last segment is written to. Once it is full, it is sealed and a new one is started. When sealed segments hold more
+ * stale records than live ones, they are compacted into a single segment in the background. The compacted segment replaces all the
+ * segments up to its id, which are deleted once it's written, or when loading the store if that was interrupted.
+ * <p>
+ * Keys found when loading the segments are not trusted until checked with the validator, either by the background validation or
+ * lazily when they are accessed.
+ * <p>
+ * Record layout: key length (int), value length (int, -1 for a deletion), CRC32 of key and value (int), key (UTF-8), value.
+ *
+ * @param <V> type of the value to store
+ */
+class SegmentedObjectStore<V> implements ObjectStore<String, V> {
+  private static final Logger LOGGER = Logger.getInstance(SegmentedObjectStore.class);
+  static final String SEGMENTS_DIR = "segments";
+  static final long DEFAULT_MAX_SEGMENT_SIZE = 8L * 1024 * 1024;
+  private static final String SEGMENT_PREFIX = "segment-";
+  private static final String SEGMENT_SUFFIX = ".log";
+  private static final String COMPACTION_SUFFIX = ".compact";
+  private static final String COMPACTED_SEGMENT_SUFFIX = ".compacted" + SEGMENT_SUFFIX;
+  private static final long NONE = -1;
+  private static final int HEADER_SIZE = 3 * Integer.BYTES;
+  private static final int MAX_KEY_LENGTH = 64 * 1024;
+  private static final int TOMBSTONE = -1;
+  static final int VALIDATION_CHUNK_SIZE = 500;
+  private static final long VALIDATION_PAUSE_MS = 20;
+
+  private final Path segmentsPath;
+  private final Reader<V> reader;
+  private final Writer<V> writer;
+  private final StoreKeyValidator<String> validator;
+  private final long maxSegmentSize;
+  private final ExecutorService maintenanceExecutor;
+
+  private final Map<String, Location> offsets = new HashMap<>();
+  // keys loaded from disk that were not checked with the validator yet
+  private final Set<String> unvalidated = new HashSet<>();
+  // size of every segment on disk, including the active one (the last)
+  private final TreeMap<Long, Long> segmentSizes = new TreeMap<>();
+  private long liveBytes;
+  private long activeSegmentId;
+  // id of the segment written by the last compaction, which is stored under a different name than the segment it replaces
+  private long compactedSegmentId = NONE;
+  private FileChannel activeChannel;
+  private boolean loaded;
+  private boolean compacting;
+  // incremented on clear, so that a compaction or validation started before can be discarded
+  private int generation;
+
+  SegmentedObjectStore(Path storeBasePath, Reader<V> reader, Writer<V> writer, StoreKeyValidator<String> validator) {
+    this(storeBasePath, reader, writer, validator, DEFAULT_MAX_SEGMENT_SIZE, Executors.newSingleThreadExecutor(r -> {
+      Thread t = new Thread(r, "sonarlint-issue-store-maintenance");
+      t.setDaemon(true);
+      t.setPriority(Thread.MIN_PRIORITY);
+      return t;
+    }));
+  }
+
+  SegmentedObjectStore(Path storeBasePath, Reader<V> reader, Writer<V> writer, StoreKeyValidator<String> validator, long maxSegmentSize,
+    ExecutorService maintenanceExecutor) {
+    this.segmentsPath = storeBasePath.resolve(SEGMENTS_DIR);
+    this.reader = reader;
+    this.writer = writer;
+    this.validator = validator;
+    this.maxSegmentSize = maxSegmentSize;
+    this.maintenanceExecutor = maintenanceExecutor;
+  }
+
+  @Override
+  public synchronized Optional<V> read(String key) throws IOException {
+    load();
+    if (!checkValid(key)) {
+      return Optional.empty();
+    }
+    Location location = offsets.get(key);
+    if (location == null) {
+      return Optional.empty();
+    }
+    ByteBuffer record = readRecord(location);
+    int keyLength = record.getInt(0);
+    int valueLength = record.getInt(Integer.BYTES);
+    try (InputStream is = new ByteArrayInputStream(record.array(), HEADER_SIZE + keyLength, valueLength)) {
+      return Optional.of(reader.apply(is));
+    }
+  }
+
+  public synchronized boolean contains(String key) {
+    load();
+    try {
+      return checkValid(key) && offsets.containsKey(key);
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to delete entry in the store", e);
+    }
+  }
+
+  /**
+   * Validates the key if it wasn't yet, and deletes its entry if it's invalid.
+   */
+  private boolean checkValid(String key) throws IOException {
+    if (unvalidated.remove(key) && !validator.apply(key)) {
+      delete(key);
+      return false;
+    }
+    return true;
+  }
+
+  public synchronized Collection<String> keys() {
+    load();
+    return new ArrayList<>(offsets.keySet());
+  }
+
+  @Override
+  public synchronized void write(String key, V value) throws IOException {
+    load();
+    Location location = append(key, serialize(value));
+    Location previous = offsets.put(key, location);
+    unvalidated.remove(key);
+    liveBytes += location.length;
+    if (previous != null) {
+      liveBytes -= previous.length;
+    }
+    maybeCompact();
+  }
+
+  /**
+   * Writes several values at once. Values are serialized in parallel without holding the lock, and the records are appended with
+   * a single write per segment. The table of offsets is updated and compaction considered only once, at the end.
+   */
+  public void writeAll(Map<String, V> values) throws IOException {
+    List<Map.Entry<String, ByteBuffer>> records = values.entrySet().parallelStream()
+      .map(e -> new AbstractMap.SimpleImmutableEntry<>(e.getKey(), record(e.getKey(), serialize(e.getValue()))))
+      .collect(Collectors.toList());
+
+    synchronized (this) {
+      load();
+      int i = 0;
+      while (i < records.size()) {
+        long offset = segmentSizes.get(activeSegmentId);
+        List<ByteBuffer> batch = new ArrayList<>();
+        List<Location> locations = new ArrayList<>();
+        // records that fit in the active segment
+        do {
+          ByteBuffer record = records.get(i + batch.size()).getValue();
+          locations.add(new Location(activeSegmentId, offset, record.remaining()));
+          batch.add(record);
+          offset += record.remaining();
+        } while (i + batch.size() < records.size() && offset < maxSegmentSize);
+
+        ByteBuffer[] buffers = batch.toArray(new ByteBuffer[0]);
+        FileChannel channel = activeChannel();
+        while (buffers[buffers.length - 1].hasRemaining()) {
+          channel.write(buffers);
+        }
+        segmentSizes.put(activeSegmentId, offset);
+        for (Location location : locations) {
+          String key = records.get(i++).getKey();
+          Location previous = offsets.put(key, location);
+          unvalidated.remove(key);
+          liveBytes += location.length;
+          if (previous != null) {
+            liveBytes -= previous.length;
+          }
+        }
+        if (offset >= maxSegmentSize) {
+          rollSegment();
+        }
+      }
+      maybeCompact();
+    }
+  }
+
+  private byte[] serialize(V value) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    writer.accept(out, value);
+    return out.toByteArray();
+  }
+
+  @Override
+  public synchronized void delete(String key) throws IOException {
+    load();
+    if (!offsets.containsKey(key)) {
+      return;
+    }
+    append(key, null);
+    unvalidated.remove(key);
+    Location previous = offsets.remove(key);
+    liveBytes -= previous.length;
+    maybeCompact();
+  }
+
+  /**
+   * Deletes all entries that are no longer valid.
+   */
+  public void deleteInvalid() {
+    int counter = 0;
+    Collection<String> keys;
+    try {
+      keys = keys();
+    } catch (Exception e) {
+      LOGGER.warn("Failed to read the store", e);
+      return;
+    }
+
+    for (String k : keys) {
+      boolean valid = validator.apply(k);
+      synchronized (this) {
+        unvalidated.remove(k);
+      }
+      if (!valid) {
+        try {
+          counter++;
+          delete(k);
+        } catch (IOException e) {
+          LOGGER.warn("Failed to delete entry in the store", e);
+        }
+      }
+    }
+    LOGGER.debug(String.format("%d entries removed from the store", counter));
+  }
+
+  /**
+   * Loads the segments and validates all keys in the background, a chunk at a time so that other maintenance tasks and
+   * accesses to the store are not held for long. It stops if the store is cleared or closed.
+   */
+  public void validateInBackground() {
+    int startGeneration;
+    synchronized (this) {
+      if (maintenanceExecutor.isShutdown()) {
+        return;
+      }
+      startGeneration = generation;
+    }
+    maintenanceExecutor.execute(() -> validateChunk(startGeneration, 0));
+  }
+
+  private void validateChunk(int startGeneration, int removedSoFar) {
+    List<String> chunk;
+    synchronized (this) {
+      if (startGeneration != generation) {
+        return;
+      }
+      load();
+      chunk = unvalidated.stream().limit(VALIDATION_CHUNK_SIZE).collect(Collectors.toList());
+    }
+    if (chunk.isEmpty()) {
+      LOGGER.debug(String.format("%d entries removed from the store", removedSoFar));
+      return;
+    }
+
+    // the validator can be slow, don't hold the lock while it runs
+    Set<String> invalid = chunk.stream().filter(k -> !validator.apply(k)).collect(Collectors.toSet());
+    int removed = removedSoFar;
+    synchronized (this) {
+      if (startGeneration != generation) {
+        return;
+      }
+      for (String key : chunk) {
+        // entries written or deleted in the meantime are no longer in the set
+        if (unvalidated.remove(key) && invalid.contains(key)) {
+          try {
+            delete(key);
+            removed++;
+          } catch (IOException e) {
+            LOGGER.warn("Failed to delete entry in the store", e);
+          }
+        }
+      }
+    }
+
+    try {
+      Thread.sleep(VALIDATION_PAUSE_MS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return;
+    }
+    int removedAfterChunk = removed;
+    synchronized (this) {
+      if (!maintenanceExecutor.isShutdown()) {
+        maintenanceExecutor.execute(() -> validateChunk(startGeneration, removedAfterChunk));
+      }
+    }
+  }
+
+  /**
+   * Removes all segments from disk.
+   */
+  public synchronized void clear() {
+    closeActiveChannel();
+    FileUtils.deleteRecursively(segmentsPath);
+    offsets.clear();
+    unvalidated.clear();
+    segmentSizes.clear();
+    liveBytes = 0;
+    compactedSegmentId = NONE;
+    generation++;
+    loaded = false;
+  }
+
+  /**
+   * Releases the file handle of the active segment and stops any pending compaction or validation.
+   * The store will reopen its files if accessed again.
+   */
+  public synchronized void close() {
+    closeActiveChannel();
+    maintenanceExecutor.shutdownNow();
+  }
+
+  private void load() {
+    if (loaded) {
+      return;
+    }
+    FileUtils.mkdirs(segmentsPath);
+    List<Long> ids = listSegmentIds();
+    for (long id : ids) {
+      segmentSizes.put(id, replay(id));
+    }
+    activeSegmentId = ids.isEmpty() ? 0 : ids.get(ids.size() - 1);
+    segmentSizes.putIfAbsent(activeSegmentId, 0L);
+    unvalidated.addAll(offsets.keySet());
+    loaded = true;
+  }
+
+  /**
+   * Ids of the segments to replay, in order. Segments replaced by a compacted segment are deleted, in case the compaction was
+   * interrupted before it deleted them.
+   */
+  private List<Long> listSegmentIds() {
+    List<Long> ids = new ArrayList<>();
+    List<Long> compactedIds = new ArrayList<>();
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(segmentsPath, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+      for (Path p : stream) {
+        String name = p.getFileName().toString();
+        boolean compacted = name.endsWith(COMPACTED_SEGMENT_SUFFIX);
+        String id = name.substring(SEGMENT_PREFIX.length(), name.length() - (compacted ? COMPACTED_SEGMENT_SUFFIX : SEGMENT_SUFFIX).length());
+        try {
+          (compacted ? compactedIds : ids).add(Long.parseLong(id));
+        } catch (NumberFormatException e) {
+          LOGGER.warn("Ignoring unexpected file in the issue store: " + p);
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to list segments of the issue store", e);
+    }
+    compactedSegmentId = compactedIds.stream().max(Comparator.naturalOrder()).orElse(NONE);
+    try {
+      for (long id : compactedIds) {
+        if (id < compactedSegmentId) {
+          Files.delete(compactedSegmentPath(id));
+        }
+      }
+      for (long id : ids) {
+        if (id <= compactedSegmentId) {
+          Files.delete(plainSegmentPath(id));
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to delete compacted segments of the issue store", e);
+    }
+    ids.removeIf(id -> id <= compactedSegmentId);
+    if (compactedSegmentId != NONE) {
+      ids.add(compactedSegmentId);
+    }
+    ids.sort(Comparator.naturalOrder());
+    return ids;
+  }
+
+  /**
+   * Reads all records of a segment into the table of offsets.
+   * A truncated or corrupted tail, usually left by an interrupted write, is cut off.
+   *
+   * @return the size of the valid part of the segment
+   */
+  private long replay(long segmentId) {
+    Path path = segmentPath(segmentId);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      long fileSize = channel.size();
+      long offset = 0;
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (offset + HEADER_SIZE <= fileSize) {
+        header.clear();
+        readFully(channel, header, offset);
+        int keyLength = header.getInt(0);
+        int valueLength = header.getInt(Integer.BYTES);
+        int checksum = header.getInt(2 * Integer.BYTES);
+        if (keyLength < 0 || keyLength > MAX_KEY_LENGTH || valueLength < TOMBSTONE) {
+          break;
+        }
+        long recordLength = (long) HEADER_SIZE + keyLength + Math.max(valueLength, 0);
+        if (offset + recordLength > fileSize) {
+          break;
+        }
+        ByteBuffer body = ByteBuffer.allocate((int) recordLength - HEADER_SIZE);
+        readFully(channel, body, offset + HEADER_SIZE);
+        if (checksum(body.array(), 0, body.capacity()) != checksum) {
+          break;
+        }
+        String key = new String(body.array(), 0, keyLength, UTF_8);
+        Location previous;
+        if (valueLength == TOMBSTONE) {
+          previous = offsets.remove(key);
+        } else {
+          Location location = new Location(segmentId, offset, (int) recordLength);
+          previous = offsets.put(key, location);
+          liveBytes += recordLength;
+        }
+        if (previous != null) {
+          liveBytes -= previous.length;
+        }
+        offset += recordLength;
+      }
+      if (offset < fileSize) {
+        LOGGER.warn(String.format("Discarding %d corrupted bytes at the end of %s", fileSize - offset, path));
+        channel.truncate(offset);
+      }
+      return offset;
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to read issue store segment " + path, e);
+    }
+  }
+
+  private Location append(String key, @Nullable byte[] value) throws IOException {
+    ByteBuffer buffer = record(key, value);
+    int recordLength = buffer.remaining();
+
+    FileChannel channel = activeChannel();
+    long offset = segmentSizes.get(activeSegmentId);
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    segmentSizes.put(activeSegmentId, offset + recordLength);
+    Location location = new Location(activeSegmentId, offset, recordLength);
+    if (offset + recordLength >= maxSegmentSize) {
+      rollSegment();
+    }
+    return location;
+  }
+
+  private static ByteBuffer record(String key, @Nullable byte[] value) {
+    byte[] keyBytes = key.getBytes(UTF_8);
+    int valueLength = value == null ? TOMBSTONE : value.length;
+    int recordLength = HEADER_SIZE + keyBytes.length + Math.max(valueLength, 0);
+    ByteBuffer buffer = ByteBuffer.allocate(recordLength);
+    buffer.putInt(keyBytes.length).putInt(valueLength).putInt(0).put(keyBytes);
+    if (value != null) {
+      buffer.put(value);
+    }
+    buffer.putInt(2 * Integer.BYTES, checksum(buffer.array(), HEADER_SIZE, recordLength - HEADER_SIZE));
+    buffer.flip();
+    return buffer;
+  }
+
+  private void rollSegment() {
+    closeActiveChannel();
+    activeSegmentId++;
+    segmentSizes.put(activeSegmentId, 0L);
+  }
+
+  private FileChannel activeChannel() throws IOException {
+    if (activeChannel == null) {
+      FileUtils.mkdirs(segmentsPath);
+      activeChannel = FileChannel.open(segmentPath(activeSegmentId), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+    return activeChannel;
+  }
+
+  private void closeActiveChannel() {
+    if (activeChannel != null) {
+      try {
+        activeChannel.close();
+      } catch (IOException e) {
+        LOGGER.warn("Failed to close issue store segment", e);
+      }
+      activeChannel = null;
+    }
+  }
+
+  private ByteBuffer readRecord(Location location) throws IOException {
+    try (FileChannel channel = FileChannel.open(segmentPath(location.segmentId), StandardOpenOption.READ)) {
+      ByteBuffer record = ByteBuffer.allocate(location.length);
+      readFully(channel, record, location.offset);
+      record.flip();
+      return record;
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    long pos = position;
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, pos);
+      if (read < 0) {
+        throw new IOException("Unexpected end of segment");
+      }
+      pos += read;
+    }
+  }
+
+  private static int checksum(byte[] bytes, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, offset, length);
+    return (int) crc.getValue();
+  }
+
+  private Path segmentPath(long segmentId) {
+    return segmentId == compactedSegmentId ? compactedSegmentPath(segmentId) : plainSegmentPath(segmentId);
+  }
+
+  private Path plainSegmentPath(long segmentId) {
+    return segmentsPath.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segmentId, SEGMENT_SUFFIX));
+  }
+
+  private Path compactedSegmentPath(long segmentId) {
+    return segmentsPath.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, segmentId, COMPACTED_SEGMENT_SUFFIX));
+  }
+
+  private void maybeCompact() {
+    SortedMap<Long, Long> sealed = segmentSizes.headMap(activeSegmentId);
+    if (compacting || sealed.isEmpty() || maintenanceExecutor.isShutdown()) {
+      return;
+    }
+    long totalBytes = segmentSizes.values().stream().mapToLong(Long::longValue).sum();
+    long garbageBytes = totalBytes - liveBytes;
+    // wait for at least a segment worth of stale records
+    if (garbageBytes < maxSegmentSize || garbageBytes < liveBytes) {
+      return;
+    }
+
+    List<Long> segmentIds = new ArrayList<>(sealed.keySet());
+    List<Map.Entry<String, Location>> toMove = new ArrayList<>();
+    for (Map.Entry<String, Location> e : offsets.entrySet()) {
+      if (sealed.containsKey(e.getValue().segmentId)) {
+        toMove.add(new AbstractMap.SimpleImmutableEntry<>(e.getKey(), e.getValue()));
+      }
+    }
+    toMove.sort(Comparator.comparing((Map.Entry<String, Location> e) -> e.getValue().segmentId).thenComparing(e -> e.getValue().offset));
+    compacting = true;
+    int startGeneration = generation;
+    maintenanceExecutor.execute(() -> compact(startGeneration, segmentIds, toMove));
+  }
+
+  /**
+   * Copies the live records of sealed segments into a new segment, without holding the lock.
+   * Sealed segments are never modified, so they can be read concurrently with writes to the active segment.
+   * The new segment takes the id of the most recent sealed segment, keeping the replay order of records.
+   */
+  private void compact(int startGeneration, List<Long> segmentIds, List<Map.Entry<String, Location>> toMove) {
+    long targetId = segmentIds.get(segmentIds.size() - 1);
+    Path tmp = segmentsPath.resolve(SEGMENT_PREFIX + targetId + COMPACTION_SUFFIX);
+    Map<String, Location> moved = new HashMap<>();
+    long size = 0;
+    try {
+      try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+        for (Map.Entry<String, Location> e : toMove) {
+          ByteBuffer record = readRecord(e.getValue());
+          while (record.hasRemaining()) {
+            out.write(record);
+          }
+          moved.put(e.getKey(), new Location(targetId, size, e.getValue().length));
+          size += e.getValue().length;
+        }
+        out.force(true);
+      }
+      swap(startGeneration, segmentIds, tmp, toMove, moved, size);
+    } catch (IOException e) {
+      LOGGER.warn("Failed to compact the issue store", e);
+    } finally {
+      deleteQuietly(tmp);
+      synchronized (this) {
+        compacting = false;
+      }
+    }
+  }
+
+  private synchronized void swap(int startGeneration, List<Long> segmentIds, Path compacted, List<Map.Entry<String, Location>> toMove,
+    Map<String, Location> moved, long size) throws IOException {
+    if (startGeneration != generation) {
+      // store was cleared meanwhile
+      return;
+    }
+    long targetId = segmentIds.get(segmentIds.size() - 1);
+    List<Path> replaced = new ArrayList<>(segmentIds.size());
+    for (long id : segmentIds) {
+      replaced.add(segmentPath(id));
+    }
+    // the compacted segment is stored under a new name, and the segments it replaces are only deleted once it's complete, so that
+    // the stale records and tombstones they contain are never replayed without the ones of the other segments
+    try {
+      Files.move(compacted, compactedSegmentPath(targetId), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(compacted, compactedSegmentPath(targetId), StandardCopyOption.REPLACE_EXISTING);
+    }
+    compactedSegmentId = targetId;
+    for (Map.Entry<String, Location> e : toMove) {
+      // entries written or deleted during the compaction are already somewhere else
+      if (e.getValue().equals(offsets.get(e.getKey()))) {
+        offsets.put(e.getKey(), moved.get(e.getKey()));
+      }
+    }
+    for (long id : segmentIds) {
+      segmentSizes.remove(id);
+    }
+    segmentSizes.put(targetId, size);
+    for (Path path : replaced) {
+      // a compacted segment compacted again alone was replaced in place, there is no older segment whose records it could bring back
+      if (!path.equals(compactedSegmentPath(targetId))) {
+        Files.deleteIfExists(path);
+      }
+    }
+    LOGGER.debug(String.format("Compacted %d segments of the issue store", segmentIds.size()));
+  }
+
+  private static void deleteQuietly(Path path) {
+    try {
+      Files.deleteIfExists(path);
+    } catch (IOException e) {
+      LOGGER.debug("Failed to delete " + path, e);
+    }
+  }
+
+  synchronized int segmentCount() {
+    load();
+    return segmentSizes.size();
+  }
+
+  static final class Location {
+    private final long segmentId;
+    private final long offset;
+    private final int length;
+
+    Location(long segmentId, long offset, int length) {
+      this.segmentId = segmentId;
+      this.offset = offset;
+      this.length = length;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (o == null || getClass() != o.getClass()) {
+        return false;
+      }
+      Location that = (Location) o;
+      return segmentId == that.segmentId && offset == that.offset && length == that.length;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(segmentId, offset, length);
+    }
+  }
+}
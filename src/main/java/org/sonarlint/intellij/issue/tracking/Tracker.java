@@ -20,391 +20,519 @@
 package org.sonarlint.intellij.issue.tracking;
 
 import com.intellij.openapi.application.ApplicationManager;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.function.Function;
-import javax.annotation.Nullable;
+import javax.annotation.CheckForNull;
 import org.sonarlint.intellij.util.SonarLintUtils;
 
 public class Tracker<RAW extends Trackable, BASE extends Trackable> {
+  private static final int NONE = -1;
 
   public Tracking<RAW, BASE> track(Input<RAW> rawInput, Input<BASE> baseInput) {
-    return ApplicationManager.getApplication().<Tracking<RAW, BASE>>runReadAction(() -> {
-      Tracking<RAW, BASE> tracking = new Tracking<>(rawInput, baseInput);
-
-      // 1. match issues with same rule, same line and same text range hash, but not necessarily with same message
-      match(tracking, LineAndTextRangeHashKeyFactory.INSTANCE);
-
-      // 2. match issues with same rule, same message and same text range hash
-      match(tracking, TextRangeHashAndMessageKeyFactory.INSTANCE);
-
-      // 3. match issues with same rule, same line and same message
-      match(tracking, LineAndMessageKeyFactory.INSTANCE);
-
-      // 4. match issues with same rule and same text range hash but different line and different message.
-      // See SONAR-2812
-      match(tracking, TextRangeHashKeyFactory.INSTANCE);
-
-      // 5. match issues with same rule, same line and same line hash
-      match(tracking, LineAndLineHashKeyFactory.INSTANCE);
-
-      // 6. match issues with same rule and same same line hash
-      match(tracking, LineHashKeyFactory.INSTANCE);
-
-      // 7. match issues with same server issue key
-      match(tracking, ServerIssueSearchKeyFactory.INSTANCE);
-
+    Tracking<RAW, BASE> tracking = new Tracking<>(rawInput, baseInput);
+    if (tracking.isComplete() || tracking.bases().isEmpty()) {
       return tracking;
-    });
-  }
-
-  private void match(Tracking<RAW, BASE> tracking, SearchKeyFactory factory) {
-    if (tracking.isComplete()) {
-      return;
     }
 
-    Map<SearchKey, List<BASE>> baseSearch = new HashMap<>();
-    for (BASE base : tracking.getUnmatchedBases()) {
-      SearchKey searchKey = factory.apply(base);
-      if (!baseSearch.containsKey(searchKey)) {
-        baseSearch.put(searchKey, new ArrayList<>());
-      }
-      baseSearch.get(searchKey).add(base);
+    // fields are read only once per issue. Lines of live issues are computed from the document, so they are read in a single
+    // short read action, and matching runs on that snapshot without blocking write actions
+    Snapshot snapshot = ApplicationManager.getApplication().<Snapshot>runReadAction(() -> new Snapshot(tracking));
+    Fields raws = snapshot.raws;
+    Fields bases = snapshot.bases;
+    if (matchIdentical(tracking, raws, bases)) {
+      return tracking;
     }
 
-    for (RAW raw : tracking.getUnmatchedRaws()) {
-      SearchKey rawKey = factory.apply(raw);
-      Collection<BASE> bases = baseSearch.get(rawKey);
-      if (bases != null && !bases.isEmpty()) {
-        // TODO taking the first one. Could be improved if there are more than 2 issues on the same line.
-        // Message could be checked to take the best one.
-        BASE match = bases.iterator().next();
-        tracking.match(raw, match);
-        baseSearch.get(rawKey).remove(match);
+    // search keys are tried in the order they are declared
+    for (SearchKey key : SearchKey.VALUES) {
+      if (tracking.isComplete()) {
+        break;
       }
+      match(tracking, key, raws, bases);
     }
+    return tracking;
   }
 
-  private interface SearchKey {
-  }
-
-  @FunctionalInterface
-  private interface SearchKeyFactory extends Function<Trackable, SearchKey> {
-    @Override
-    SearchKey apply(Trackable trackable);
-  }
-
-  private static class LineAndTextRangeHashKey implements SearchKey {
-    private final String ruleKey;
-    private final Integer textRangeHash;
-    private final Integer line;
-
-    LineAndTextRangeHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.line = trackable.getLine();
-      this.textRangeHash = trackable.getTextRangeHash();
+  /**
+   * Fast path when nothing changed: if raw and base issues, both sorted by the hash of the first search key, have the same
+   * first search key one by one, the first pass would match them one to one and complete the tracking. Issues with the same
+   * key are in the same line, so the first pass matches them in the order of the input, and so does the sort.
+   */
+  private static boolean matchIdentical(Tracking<?, ?> tracking, Fields raws, Fields bases) {
+    if (raws.size != bases.size) {
+      return false;
     }
-
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null) {
+    SearchKey first = SearchKey.VALUES[0];
+    Integer[] rawOrder = raws.sortedBy(first);
+    Integer[] baseOrder = bases.sortedBy(first);
+    for (int n = 0; n < raws.size; n++) {
+      int i = rawOrder[n];
+      int j = baseOrder[n];
+      if (raws.hash(first, i) != bases.hash(first, j) || !first.matches(raws, i, bases, j)) {
         return false;
       }
-      if (this.getClass() != o.getClass()) {
-        return false;
-      }
-      LineAndTextRangeHashKey that = (LineAndTextRangeHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && Objects.equals(textRangeHash, that.textRangeHash)
-        && ruleKey.equals(that.ruleKey);
     }
+    for (int n = 0; n < raws.size; n++) {
+      tracking.match(rawOrder[n], baseOrder[n]);
+    }
+    return true;
+  }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + (textRangeHash != null ? textRangeHash.hashCode() : 0);
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
+  private static void match(Tracking<?, ?> tracking, SearchKey key, Fields raws, Fields bases) {
+    SearchIndex index = new SearchIndex(key, bases, tracking);
+    if (index.isEmpty()) {
+      return;
+    }
+    for (int i = tracking.nextUnmatchedRaw(0); i >= 0; i = tracking.nextUnmatchedRaw(i + 1)) {
+      if (!key.isSearchable(raws, i)) {
+        continue;
+      }
+      Candidates candidates = index.find(raws.hash(key, i), raws, i);
+      if (candidates != null) {
+        int j = candidates.takeNearest(raws.line(i), tracking);
+        if (j != NONE) {
+          tracking.match(i, j);
+        }
+      }
     }
   }
 
-  private enum LineAndTextRangeHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
+  private static final class Snapshot {
+    private final Fields raws;
+    private final Fields bases;
 
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new LineAndTextRangeHashKey(t);
+    Snapshot(Tracking<?, ?> tracking) {
+      raws = new Fields(tracking.raws());
+      bases = new Fields(tracking.bases());
     }
   }
 
-  private static class LineAndLineHashKey implements SearchKey {
-    private final String ruleKey;
-    private final Integer line;
-    private final Integer lineHash;
-
-    LineAndLineHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.line = trackable.getLine();
-      this.lineHash = trackable.getLineHash();
+  /**
+   * Fields of the issues used in search keys, and the hash of each search key, in the order of the issues.
+   * Checksums of the text can be costly to compute for live issues, so they are only read for the issues a search key is
+   * computed for, and search keys are only computed for the issues not matched yet.
+   */
+  private static final class Fields {
+    private final List<? extends Trackable> issues;
+    private final int size;
+    private final String[] ruleKeys;
+    private final String[] messages;
+    private final Integer[] lines;
+    private final String[] serverIssueKeys;
+    private final Integer[] textRangeHashes;
+    private final Integer[] lineHashes;
+    private final BitSet textRangeHashesRead;
+    private final BitSet lineHashesRead;
+    // for each search key, once needed: its hash for each issue, and the issues it was computed for
+    private final long[][] hashes;
+    private final BitSet[] hashed;
+
+    Fields(List<? extends Trackable> issues) {
+      this.issues = issues;
+      size = issues.size();
+      ruleKeys = new String[size];
+      messages = new String[size];
+      lines = new Integer[size];
+      serverIssueKeys = new String[size];
+      textRangeHashes = new Integer[size];
+      lineHashes = new Integer[size];
+      textRangeHashesRead = new BitSet(size);
+      lineHashesRead = new BitSet(size);
+      hashes = new long[SearchKey.VALUES.length][];
+      hashed = new BitSet[SearchKey.VALUES.length];
+      for (int i = 0; i < size; i++) {
+        Trackable issue = issues.get(i);
+        ruleKeys[i] = issue.getRuleKey();
+        messages[i] = issue.getMessage();
+        lines[i] = issue.getLine();
+        serverIssueKeys[i] = issue.getServerIssueKey();
+      }
     }
 
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
+    long hash(SearchKey key, int i) {
+      int k = key.ordinal();
+      if (hashes[k] == null) {
+        hashes[k] = new long[size];
+        hashed[k] = new BitSet(size);
       }
-      if (o == null) {
-        return false;
+      if (!hashed[k].get(i)) {
+        hashes[k][i] = key.hash(this, i);
+        hashed[k].set(i);
       }
-      if (this.getClass() != o.getClass()) {
-        return false;
+      return hashes[k][i];
+    }
+
+    /**
+     * Indexes of the issues sorted by the hash of the key. The sort is stable, so issues with the same hash stay in the order of
+     * the input.
+     */
+    Integer[] sortedBy(SearchKey key) {
+      Integer[] order = new Integer[size];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
       }
-      LineAndLineHashKey that = (LineAndLineHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && Objects.equals(lineHash, that.lineHash)
-        && ruleKey.equals(that.ruleKey);
+      Arrays.sort(order, Comparator.comparingLong(i -> hash(key, i)));
+      return order;
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + (lineHash != null ? lineHash.hashCode() : 0);
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
+    Integer textRangeHash(int i) {
+      if (!textRangeHashesRead.get(i)) {
+        textRangeHashes[i] = issues.get(i).getTextRangeHash();
+        textRangeHashesRead.set(i);
+      }
+      return textRangeHashes[i];
     }
-  }
 
-  private enum LineAndLineHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
+    Integer lineHash(int i) {
+      if (!lineHashesRead.get(i)) {
+        lineHashes[i] = issues.get(i).getLineHash();
+        lineHashesRead.set(i);
+      }
+      return lineHashes[i];
+    }
 
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new LineAndLineHashKey(t);
+    /**
+     * Line used to find the nearest candidate, issues without line come first
+     */
+    int line(int i) {
+      return lines[i] != null ? lines[i] : 0;
     }
   }
 
-  private static class LineHashKey implements SearchKey {
-    private final String ruleKey;
-    private final Integer lineHash;
+  /**
+   * Hash table of the base issues not matched yet for a search key. It's built for each pass, so that the key is only computed
+   * for the remaining base issues. Base issues having the same value for the key form a group, and groups with the same hash
+   * bucket are chained. The {@link Candidates} of a group are only built when the group is searched.
+   */
+  private static final class SearchIndex {
+    private final SearchKey key;
+    private final Fields bases;
+    private final int mask;
+    private final int[] heads;
+    // the first base issue of each group, the next group in the same bucket, the next base issue in the group
+    private final int[] groupFirst;
+    private final int[] groupNext;
+    private final int[] groupSize;
+    private final int[] memberNext;
+    private int groupCount;
+    private final Candidates[] groupCandidates;
+
+    SearchIndex(SearchKey key, Fields bases, Tracking<?, ?> tracking) {
+      this.key = key;
+      this.bases = bases;
+      int unmatched = tracking.unmatchedBaseCount();
+      int capacity = Integer.highestOneBit(Math.max(2 * unmatched - 1, 1)) << 1;
+      mask = capacity - 1;
+      heads = new int[capacity];
+      Arrays.fill(heads, NONE);
+      groupFirst = new int[unmatched];
+      groupNext = new int[unmatched];
+      groupSize = new int[unmatched];
+      memberNext = new int[bases.size];
+      for (int j = tracking.nextUnmatchedBase(0); j >= 0; j = tracking.nextUnmatchedBase(j + 1)) {
+        if (key.isSearchable(bases, j)) {
+          add(bases.hash(key, j), j);
+        }
+      }
+      groupCandidates = new Candidates[groupCount];
+    }
 
-    LineHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.lineHash = trackable.getLineHash();
+    boolean isEmpty() {
+      return groupCount == 0;
     }
 
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
+    private void add(long hash, int baseIndex) {
+      int group = findGroup(hash, bases, baseIndex);
+      if (group == NONE) {
+        group = groupCount++;
+        int bucket = bucket(hash);
+        groupFirst[group] = NONE;
+        groupNext[group] = heads[bucket];
+        heads[bucket] = group;
       }
-      if (o == null) {
-        return false;
+      memberNext[baseIndex] = groupFirst[group];
+      groupFirst[group] = baseIndex;
+      groupSize[group]++;
+    }
+
+    /**
+     * The base issues having the same value for the key as the given issue
+     */
+    @CheckForNull
+    Candidates find(long hash, Fields issues, int i) {
+      int group = findGroup(hash, issues, i);
+      if (group == NONE) {
+        return null;
       }
-      if (this.getClass() != o.getClass()) {
-        return false;
+      Candidates candidates = groupCandidates[group];
+      if (candidates == null) {
+        long[] members = new long[groupSize[group]];
+        int m = 0;
+        for (int j = groupFirst[group]; j != NONE; j = memberNext[j]) {
+          members[m++] = Candidates.pack(bases.line(j), j);
+        }
+        candidates = new Candidates(members);
+        groupCandidates[group] = candidates;
       }
-      LineHashKey that = (LineHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(lineHash, that.lineHash)
-        && ruleKey.equals(that.ruleKey);
+      return candidates;
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + (lineHash != null ? lineHash.hashCode() : 0);
-      return result;
+    private int findGroup(long hash, Fields issues, int i) {
+      for (int group = heads[bucket(hash)]; group != NONE; group = groupNext[group]) {
+        int j = groupFirst[group];
+        if (bases.hash(key, j) == hash && key.matches(issues, i, bases, j)) {
+          return group;
+        }
+      }
+      return NONE;
     }
-  }
 
-  private enum LineHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
-
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new LineHashKey(t);
+    private int bucket(long hash) {
+      return (int) (hash ^ (hash >>> 32)) & mask;
     }
   }
 
-  private static class TextRangeHashAndMessageKey implements SearchKey {
-    private final String ruleKey;
-    private final String message;
-    private final Integer textRangeHash;
+  /**
+   * Base issues of a group, sorted by line then by their order in the input. Removed positions are skipped with two
+   * disjoint-set forests, one pointing to the next position still present and one to the previous, so that a removal and a
+   * lookup take amortized logarithmic time. Issues matched by another search key are removed when they are met.
+   */
+  private static final class Candidates {
+    private final long[] sorted;
+    // next[p] leads to the first position >= p still present, sorted.length if none
+    private final int[] next;
+    // previous[p + 1] leads to the last position <= p still present plus one, 0 if none
+    private final int[] previous;
+
+    Candidates(long[] members) {
+      sorted = members;
+      Arrays.sort(sorted);
+      next = new int[sorted.length + 1];
+      previous = new int[sorted.length + 1];
+      for (int p = 0; p <= sorted.length; p++) {
+        next[p] = p;
+        previous[p] = p;
+      }
+    }
 
-    TextRangeHashAndMessageKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.message = trackable.getMessage();
-      this.textRangeHash = trackable.getTextRangeHash();
+    /**
+     * Removes and returns the unmatched base issue that is the nearest to the given line. When two are at the same distance,
+     * the first in the input is preferred.
+     */
+    int takeNearest(int line, Tracking<?, ?> tracking) {
+      while (true) {
+        int start = lowerBound(pack(line, 0));
+        int above = nextPresent(start);
+        int below = previousPresent(start - 1);
+        if (below != NONE) {
+          // first issue in the input on that line
+          below = nextPresent(lowerBound(pack(lineOf(sorted[below]), 0)));
+        }
+        int nearest = nearest(line, above, below);
+        if (nearest == NONE) {
+          return NONE;
+        }
+        remove(nearest);
+        int candidate = indexOf(sorted[nearest]);
+        if (tracking.isUnmatchedBase(candidate)) {
+          return candidate;
+        }
+      }
     }
 
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
+    private int nearest(int line, int above, int below) {
+      if (above == sorted.length) {
+        return below;
       }
-      if (o == null) {
-        return false;
+      if (below == NONE) {
+        return above;
       }
-      if (this.getClass() != o.getClass()) {
-        return false;
+      long distanceAbove = (long) lineOf(sorted[above]) - line;
+      long distanceBelow = (long) line - lineOf(sorted[below]);
+      if (distanceAbove != distanceBelow) {
+        return distanceAbove < distanceBelow ? above : below;
       }
-      TextRangeHashAndMessageKey that = (TextRangeHashAndMessageKey) o;
-      // start with most discriminant field
-      return Objects.equals(textRangeHash, that.textRangeHash)
-        && message.equals(that.message)
-        && ruleKey.equals(that.ruleKey);
+      return indexOf(sorted[above]) < indexOf(sorted[below]) ? above : below;
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + message.hashCode();
-      result = 31 * result + (textRangeHash != null ? textRangeHash.hashCode() : 0);
-      return result;
+    private int lowerBound(long value) {
+      int position = Arrays.binarySearch(sorted, value);
+      return position >= 0 ? position : (-position - 1);
     }
-  }
 
-  private enum TextRangeHashAndMessageKeyFactory implements SearchKeyFactory {
-    INSTANCE;
+    private int nextPresent(int position) {
+      int p = position;
+      while (next[p] != p) {
+        next[p] = next[next[p]];
+        p = next[p];
+      }
+      return p;
+    }
 
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new TextRangeHashAndMessageKey(t);
+    private int previousPresent(int position) {
+      int p = position + 1;
+      while (previous[p] != p) {
+        previous[p] = previous[previous[p]];
+        p = previous[p];
+      }
+      return p - 1;
     }
-  }
 
-  private static class LineAndMessageKey implements SearchKey {
-    private final String ruleKey;
-    private final String message;
-    private final Integer line;
+    private void remove(int position) {
+      next[position] = position + 1;
+      previous[position + 1] = position;
+    }
 
-    LineAndMessageKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.message = trackable.getMessage();
-      this.line = trackable.getLine();
+    static long pack(int line, int baseIndex) {
+      return ((long) line << 32) | baseIndex;
     }
 
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null) {
-        return false;
-      }
-      if (this.getClass() != o.getClass()) {
-        return false;
-      }
-      LineAndMessageKey that = (LineAndMessageKey) o;
-      // start with most discriminant field
-      return Objects.equals(line, that.line)
-        && message.equals(that.message)
-        && ruleKey.equals(that.ruleKey);
+    private static int lineOf(long packed) {
+      return (int) (packed >>> 32);
     }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + message.hashCode();
-      result = 31 * result + (line != null ? line.hashCode() : 0);
-      return result;
+    private static int indexOf(long packed) {
+      return (int) packed;
     }
   }
 
-  private enum LineAndMessageKeyFactory implements SearchKeyFactory {
-    INSTANCE;
+  private enum SearchKey {
+    // 1. match issues with same rule, same line and same text range hash, but not necessarily with same message
+    LINE_AND_TEXT_RANGE_HASH {
+      @Override
+      long hash(Fields f, int i) {
+        return combine(f.ruleKeys[i].hashCode(), Objects.hashCode(f.lines[i]), Objects.hashCode(f.textRangeHash(i)));
+      }
 
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new LineAndMessageKey(t);
-    }
-  }
+      @Override
+      boolean matches(Fields a, int i, Fields b, int j) {
+        // start with most discriminant field
+        return Objects.equals(a.lines[i], b.lines[j])
+          && Objects.equals(a.textRangeHash(i), b.textRangeHash(j))
+          && a.ruleKeys[i].equals(b.ruleKeys[j]);
+      }
+    },
 
-  private static class TextRangeHashKey implements SearchKey {
-    private final String ruleKey;
-    private final Integer textRangeHash;
+    // 2. match issues with same rule, same message and same text range hash
+    TEXT_RANGE_HASH_AND_MESSAGE {
+      @Override
+      long hash(Fields f, int i) {
+        return combine(f.ruleKeys[i].hashCode(), f.messages[i].hashCode(), Objects.hashCode(f.textRangeHash(i)));
+      }
 
-    TextRangeHashKey(Trackable trackable) {
-      this.ruleKey = trackable.getRuleKey();
-      this.textRangeHash = trackable.getTextRangeHash();
-    }
+      @Override
+      boolean matches(Fields a, int i, Fields b, int j) {
+        return Objects.equals(a.textRangeHash(i), b.textRangeHash(j))
+          && a.messages[i].equals(b.messages[j])
+          && a.ruleKeys[i].equals(b.ruleKeys[j]);
+      }
+    },
 
-    @Override
-    public boolean equals(@Nullable Object o) {
-      if (this == o) {
-        return true;
+    // 3. match issues with same rule, same line and same message
+    LINE_AND_MESSAGE {
+      @Override
+      long hash(Fields f, int i) {
+        return combine(f.ruleKeys[i].hashCode(), f.messages[i].hashCode(), Objects.hashCode(f.lines[i]));
       }
-      if (o == null) {
-        return false;
+
+      @Override
+      boolean matches(Fields a, int i, Fields b, int j) {
+        return Objects.equals(a.lines[i], b.lines[j])
+          && a.messages[i].equals(b.messages[j])
+          && a.ruleKeys[i].equals(b.ruleKeys[j]);
       }
-      if (this.getClass() != o.getClass()) {
-        return false;
+    },
+
+    // 4. match issues with same rule and same text range hash but different line and different message.
+    // See SONAR-2812
+    TEXT_RANGE_HASH {
+      @Override
+      long hash(Fields f, int i) {
+        return combine(f.ruleKeys[i].hashCode(), Objects.hashCode(f.textRangeHash(i)), 0);
       }
-      TextRangeHashKey that = (TextRangeHashKey) o;
-      // start with most discriminant field
-      return Objects.equals(textRangeHash, that.textRangeHash)
-        && ruleKey.equals(that.ruleKey);
-    }
 
-    @Override
-    public int hashCode() {
-      int result = ruleKey.hashCode();
-      result = 31 * result + (textRangeHash != null ? textRangeHash.hashCode() : 0);
-      return result;
-    }
-  }
+      @Override
+      boolean matches(Fields a, int i, Fields b, int j) {
+        return Objects.equals(a.textRangeHash(i), b.textRangeHash(j))
+          && a.ruleKeys[i].equals(b.ruleKeys[j]);
+      }
+    },
 
-  private enum TextRangeHashKeyFactory implements SearchKeyFactory {
-    INSTANCE;
+    // 5. match issues with same rule, same line and same line hash
+    LINE_AND_LINE_HASH {
+      @Override
+      long hash(Fields f, int i) {
+        return combine(f.ruleKeys[i].hashCode(), Objects.hashCode(f.lineHash(i)), Objects.hashCode(f.lines[i]));
+      }
 
-    @Override
-    public SearchKey apply(Trackable t) {
-      return new TextRangeHashKey(t);
-    }
-  }
+      @Override
+      boolean matches(Fields a, int i, Fields b, int j) {
+        return Objects.equals(a.lines[i], b.lines[j])
+          && Objects.equals(a.lineHash(i), b.lineHash(j))
+          && a.ruleKeys[i].equals(b.ruleKeys[j]);
+      }
+    },
 
-  private static class ServerIssueSearchKey implements SearchKey {
-    private final String serverIssueKey;
+    // 6. match issues with same rule and same same line hash
+    LINE_HASH {
+      @Override
+      long hash(Fields f, int i) {
+        return combine(f.ruleKeys[i].hashCode(), Objects.hashCode(f.lineHash(i)), 0);
+      }
 
-    ServerIssueSearchKey(Trackable trackable) {
-      serverIssueKey = trackable.getServerIssueKey();
-    }
+      @Override
+      boolean matches(Fields a, int i, Fields b, int j) {
+        return Objects.equals(a.lineHash(i), b.lineHash(j))
+          && a.ruleKeys[i].equals(b.ruleKeys[j]);
+      }
+    },
 
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
+    // 7. match issues with same server issue key
+    SERVER_ISSUE_KEY {
+      @Override
+      long hash(Fields f, int i) {
+        return combine(Objects.hashCode(f.serverIssueKeys[i]), 0, 0);
       }
-      if (o == null || getClass() != o.getClass()) {
-        return false;
+
+      @Override
+      boolean isSearchable(Fields f, int i) {
+        return !SonarLintUtils.isBlank(f.serverIssueKeys[i]);
       }
 
-      ServerIssueSearchKey that = (ServerIssueSearchKey) o;
+      @Override
+      boolean matches(Fields a, int i, Fields b, int j) {
+        return a.serverIssueKeys[i].equals(b.serverIssueKeys[j]);
+      }
+    };
 
-      return !SonarLintUtils.isBlank(serverIssueKey) && !SonarLintUtils.isBlank(that.serverIssueKey) && serverIssueKey.equals(that.serverIssueKey);
-    }
+    private static final SearchKey[] VALUES = values();
 
-    @Override
-    public int hashCode() {
-      return serverIssueKey != null ? serverIssueKey.hashCode() : 0;
-    }
-  }
+    abstract long hash(Fields f, int i);
 
-  private enum ServerIssueSearchKeyFactory implements SearchKeyFactory {
-    INSTANCE;
+    abstract boolean matches(Fields a, int i, Fields b, int j);
+
+    /**
+     * Issues for which this key is not relevant are never matched with it
+     */
+    boolean isSearchable(Fields f, int i) {
+      return true;
+    }
 
-    @Override
-    public SearchKey apply(Trackable trackable) {
-      return new ServerIssueSearchKey(trackable);
+    /**
+     * 64-bit hash of up to three fields
+     */
+    private static long combine(int h1, int h2, int h3) {
+      long h = 0xcbf29ce484222325L;
+      h = (h ^ (h1 & 0xFFFFFFFFL)) * 0x100000001b3L;
+      h = (h ^ (h2 & 0xFFFFFFFFL)) * 0x100000001b3L;
+      h = (h ^ (h3 & 0xFFFFFFFFL)) * 0x100000001b3L;
+      h ^= h >>> 33;
+      h *= 0xff51afd7ed558ccdL;
+      h ^= h >>> 33;
+      return h;
     }
   }
 }
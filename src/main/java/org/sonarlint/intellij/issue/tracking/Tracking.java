@@ -20,7 +20,7 @@
 package org.sonarlint.intellij.issue.tracking;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.BitSet;
 import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
@@ -33,25 +33,30 @@ public class Tracking<RAW extends Trackable, BASE extends Trackable> {
   private final IdentityHashMap<RAW, BASE> rawToBase = new IdentityHashMap<>();
   private final IdentityHashMap<BASE, RAW> baseToRaw = new IdentityHashMap<>();
 
-  private final Collection<RAW> raws;
-  private final Collection<BASE> bases;
+  private final List<RAW> raws;
+  private final List<BASE> bases;
+  // indexes in raws and bases of the issues not matched yet
+  private final BitSet unmatchedRaws;
+  private final BitSet unmatchedBases;
 
   public Tracking(Input<RAW> rawInput, Input<BASE> baseInput) {
-    this.raws = rawInput.getIssues();
-    this.bases = baseInput.getIssues();
+    this.raws = new ArrayList<>(rawInput.getIssues());
+    this.bases = new ArrayList<>(baseInput.getIssues());
+    this.unmatchedRaws = new BitSet(raws.size());
+    this.unmatchedRaws.set(0, raws.size());
+    this.unmatchedBases = new BitSet(bases.size());
+    this.unmatchedBases.set(0, bases.size());
   }
 
   /**
    * Returns an Iterable to be traversed when matching issues. That means
-   * that the traversal does not fail if method {@link #match(Trackable, Trackable)}
+   * that the traversal does not fail if method {@link #match(int, int)}
    * is called.
    */
   public Iterable<RAW> getUnmatchedRaws() {
-    List<RAW> result = new ArrayList<>();
-    for (RAW r : raws) {
-      if (!rawToBase.containsKey(r)) {
-        result.add(r);
-      }
+    List<RAW> result = new ArrayList<>(unmatchedRaws.cardinality());
+    for (int i = unmatchedRaws.nextSetBit(0); i >= 0; i = unmatchedRaws.nextSetBit(i + 1)) {
+      result.add(raws.get(i));
     }
     return result;
   }
@@ -68,11 +73,9 @@ public class Tracking<RAW extends Trackable, BASE extends Trackable> {
    * The base issues that are not matched by a raw issue and that need to be closed.
    */
   public Iterable<BASE> getUnmatchedBases() {
-    List<BASE> result = new ArrayList<>();
-    for (BASE b : bases) {
-      if (!baseToRaw.containsKey(b)) {
-        result.add(b);
-      }
+    List<BASE> result = new ArrayList<>(unmatchedBases.cardinality());
+    for (int i = unmatchedBases.nextSetBit(0); i >= 0; i = unmatchedBases.nextSetBit(i + 1)) {
+      result.add(bases.get(i));
     }
     return result;
   }
@@ -81,13 +84,41 @@ public class Tracking<RAW extends Trackable, BASE extends Trackable> {
     return !baseToRaw.containsKey(base);
   }
 
-  void match(RAW raw, BASE base) {
+  List<RAW> raws() {
+    return raws;
+  }
+
+  List<BASE> bases() {
+    return bases;
+  }
+
+  int nextUnmatchedRaw(int fromIndex) {
+    return unmatchedRaws.nextSetBit(fromIndex);
+  }
+
+  int nextUnmatchedBase(int fromIndex) {
+    return unmatchedBases.nextSetBit(fromIndex);
+  }
+
+  int unmatchedBaseCount() {
+    return unmatchedBases.cardinality();
+  }
+
+  boolean isUnmatchedBase(int baseIndex) {
+    return unmatchedBases.get(baseIndex);
+  }
+
+  void match(int rawIndex, int baseIndex) {
+    RAW raw = raws.get(rawIndex);
+    BASE base = bases.get(baseIndex);
+    unmatchedRaws.clear(rawIndex);
+    unmatchedBases.clear(baseIndex);
     rawToBase.put(raw, base);
     baseToRaw.put(base, raw);
   }
 
   boolean isComplete() {
-    return rawToBase.size() == raws.size();
+    return unmatchedRaws.isEmpty();
   }
 
 }
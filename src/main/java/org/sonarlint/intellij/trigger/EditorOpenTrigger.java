@@ -29,6 +29,7 @@ import com.intellij.openapi.vfs.VirtualFile;
 import java.util.Arrays;
 import java.util.Collections;
 import org.jetbrains.annotations.NotNull;
+import org.sonarlint.intellij.issue.IssueManager;
 import org.sonarlint.intellij.util.SonarLintUtils;
 
 import static org.sonarlint.intellij.config.Settings.getGlobalSettings;
@@ -41,6 +42,7 @@ public class EditorOpenTrigger implements FileEditorManagerListener, StartupActi
     if (!getGlobalSettings().isAutoTrigger()) {
       return;
     }
+    SonarLintUtils.getService(source.getProject(), IssueManager.class).prefetch(file);
     SonarLintSubmitter submitter = SonarLintUtils.getService(source.getProject(), SonarLintSubmitter.class);
     submitter.submitFiles(Collections.singleton(file), TriggerType.EDITOR_OPEN, true);
   }
@@ -62,6 +64,8 @@ public class EditorOpenTrigger implements FileEditorManagerListener, StartupActi
       if (getGlobalSettings().isAutoTrigger()) {
         VirtualFile[] openFiles = FileEditorManager.getInstance(myProject).getOpenFiles();
         if (openFiles.length > 0) {
+          IssueManager issueManager = SonarLintUtils.getService(myProject, IssueManager.class);
+          Arrays.stream(openFiles).forEach(issueManager::prefetch);
           SonarLintSubmitter submitter = SonarLintUtils.getService(myProject, SonarLintSubmitter.class);
           submitter.submitFiles(Arrays.asList(openFiles), TriggerType.EDITOR_OPEN, true);
         }
@@ -28,7 +28,8 @@ public enum TriggerType {
   EDITOR_CHANGE("Editor change"),
   CHECK_IN("Pre-commit check"),
   CONFIG_CHANGE("Config change"),
-  BINDING_UPDATE("Binding update");
+  BINDING_UPDATE("Binding update"),
+  BRANCH_CHANGE("Branch change");
 
   private final String name;
 
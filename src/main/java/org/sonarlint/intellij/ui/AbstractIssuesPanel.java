@@ -25,7 +25,6 @@ import com.intellij.openapi.actionSystem.ActionGroup;
 import com.intellij.openapi.actionSystem.ActionManager;
 import com.intellij.openapi.actionSystem.ActionToolbar;
 import com.intellij.openapi.actionSystem.AnAction;
-import com.intellij.openapi.editor.RangeMarker;
 import com.intellij.openapi.fileEditor.OpenFileDescriptor;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.SimpleToolWindowPanel;
@@ -203,10 +202,8 @@ abstract class AbstractIssuesPanel extends SimpleToolWindowPanel implements Occu
     tree.getSelectionModel().setSelectionPath(path);
     tree.scrollPathToVisible(path);
 
-    RangeMarker range = node.issue().getRange();
-    int startOffset = (range != null) ? range.getStartOffset() : 0;
     return new OccurenceNavigator.OccurenceInfo(
-      new OpenFileDescriptor(project, node.issue().psiFile().getVirtualFile(), startOffset),
+      new OpenFileDescriptor(project, node.issue().psiFile().getVirtualFile(), node.issue().getStartOffset()),
       -1,
       -1);
   }
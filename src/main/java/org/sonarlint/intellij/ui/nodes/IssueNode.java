@@ -19,8 +19,6 @@
  */
 package org.sonarlint.intellij.ui.nodes;
 
-import com.intellij.openapi.editor.Document;
-import com.intellij.openapi.editor.RangeMarker;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.ui.SimpleTextAttributes;
 import com.intellij.util.ui.JBUI;
@@ -97,18 +95,15 @@ public class IssueNode extends AbstractNode {
   }
 
   private static String issueCoordinates(@Nonnull LiveIssue issue) {
-    RangeMarker range = issue.getRange();
-    if (range == null) {
+    if (issue.isFileLevel()) {
       return "(0, 0) ";
     }
 
-    if (!issue.isValid()) {
+    Integer line = issue.getLine();
+    if (line == null) {
       return "(-, -) ";
     }
 
-    Document doc = range.getDocument();
-    int line = doc.getLineNumber(range.getStartOffset());
-    int offset = range.getStartOffset() - doc.getLineStartOffset(line);
-    return String.format("(%d, %d) ", line + 1, offset);
+    return String.format("(%d, %d) ", line, issue.getStartLineOffset());
   }
 }
@@ -27,7 +27,6 @@ import com.intellij.openapi.actionSystem.DataProvider;
 import com.intellij.openapi.actionSystem.DefaultActionGroup;
 import com.intellij.openapi.actionSystem.IdeActions;
 import com.intellij.openapi.actionSystem.PlatformDataKeys;
-import com.intellij.openapi.editor.RangeMarker;
 import com.intellij.openapi.fileEditor.OpenFileDescriptor;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -114,14 +113,7 @@ public class IssueTree extends Tree implements DataProvider {
       return null;
     }
 
-    int offset;
-    RangeMarker range = issue.getRange();
-    if (range != null) {
-      offset = range.getStartOffset();
-    } else {
-      offset = 0;
-    }
-    return new OpenFileDescriptor(project, issue.psiFile().getVirtualFile(), offset);
+    return new OpenFileDescriptor(project, issue.psiFile().getVirtualFile(), issue.getStartOffset());
   }
 
   @CheckForNull
@@ -22,7 +22,6 @@ package org.sonarlint.intellij.ui.tree;
 import com.google.common.collect.ComparisonChain;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Ordering;
-import com.intellij.openapi.editor.RangeMarker;
 import com.intellij.openapi.vfs.VirtualFile;
 import java.util.Collection;
 import java.util.Comparator;
@@ -194,11 +193,8 @@ public class IssueTreeModelBuilder {
         return severityCompare;
       }
 
-      RangeMarker r1 = o1.getRange();
-      RangeMarker r2 = o2.getRange();
-
-      int rangeStart1 = (r1 == null) ? -1 : r1.getStartOffset();
-      int rangeStart2 = (r2 == null) ? -1 : r2.getStartOffset();
+      int rangeStart1 = o1.isFileLevel() ? -1 : o1.getStartOffset();
+      int rangeStart2 = o2.isFileLevel() ? -1 : o2.getStartOffset();
 
       return ComparisonChain.start()
         .compare(rangeStart1, rangeStart2)
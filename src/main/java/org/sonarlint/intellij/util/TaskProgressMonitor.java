@@ -22,6 +22,8 @@ package org.sonarlint.intellij.util;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import java.util.ArrayList;
+import java.util.List;
 import javax.annotation.Nullable;
 import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
 
@@ -82,4 +84,72 @@ public class TaskProgressMonitor extends ProgressMonitor {
   public void executeNonCancelableSection(Runnable nonCancelable) {
     progressManager.executeNonCancelableSection(nonCancelable);
   }
+
+  /**
+   * Monitors of parts of the task that run in parallel. The fraction of the task is the average of the fractions of its parts, and
+   * the messages of the parts replace each other.
+   */
+  public List<ProgressMonitor> split(int parts) {
+    return split(this, parts);
+  }
+
+  /**
+   * Same as {@link #split(int)}, for any monitor, for example the one of a part that is itself analyzed in parallel.
+   */
+  public static List<ProgressMonitor> split(ProgressMonitor parent, int parts) {
+    float[] fractions = new float[parts];
+    List<ProgressMonitor> monitors = new ArrayList<>(parts);
+    for (int i = 0; i < parts; i++) {
+      monitors.add(new PartProgressMonitor(parent, fractions, i));
+    }
+    return monitors;
+  }
+
+  private static class PartProgressMonitor extends ProgressMonitor {
+    private final ProgressMonitor parent;
+    // fractions of all the parts, guarded by itself
+    private final float[] fractions;
+    private final int part;
+
+    private PartProgressMonitor(ProgressMonitor parent, float[] fractions, int part) {
+      this.parent = parent;
+      this.fractions = fractions;
+      this.part = part;
+    }
+
+    @Override
+    public boolean isCanceled() {
+      return parent.isCanceled();
+    }
+
+    @Override
+    public void setMessage(String msg) {
+      parent.setMessage(msg);
+    }
+
+    @Override
+    public void setFraction(float fraction) {
+      float sum = 0;
+      synchronized (fractions) {
+        fractions[part] = fraction;
+        for (float f : fractions) {
+          sum += f;
+        }
+      }
+      parent.setFraction(sum / fractions.length);
+    }
+
+    @Override
+    public void setIndeterminate(boolean indeterminate) {
+      // other parts might be determinate
+      if (!indeterminate) {
+        parent.setIndeterminate(false);
+      }
+    }
+
+    @Override
+    public void executeNonCancelableSection(Runnable nonCancelable) {
+      parent.executeNonCancelableSection(nonCancelable);
+    }
+  }
 }
@@ -21,16 +21,26 @@ package org.sonarlint.intellij.analysis;
 
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.serviceContainer.ComponentManagerImpl;
 import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixture4TestCase;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
+import org.sonarlint.intellij.issue.IssueProcessor;
 import org.sonarlint.intellij.messages.TaskListener;
 import org.sonarlint.intellij.trigger.TriggerType;
+import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.AnalysisResults;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
+import org.sonarsource.sonarlint.core.client.api.exceptions.CanceledException;
 
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.codehaus.groovy.runtime.InvokerHelper.asList;
@@ -68,6 +78,132 @@ public class SonarLintJobManagerTest extends LightPlatformCodeInsightFixture4Tes
     assertThat(job.project()).isEqualTo(getProject());
   }
 
+  @Test
+  public void should_merge_pending_background_jobs_of_same_module() {
+    ExecutorService executor = mock(ExecutorService.class);
+    manager = new SonarLintJobManager(getProject(), executor);
+    VirtualFile file1 = myFixture.addFileToProject("Foo.java", "class Foo {}").getVirtualFile();
+    VirtualFile file2 = myFixture.addFileToProject("Bar.java", "class Bar {}").getVirtualFile();
+
+    manager.submitBackground(Collections.singletonMap(getModule(), asList(file1)), Collections.emptyList(), TriggerType.EDITOR_CHANGE, null);
+    manager.submitBackground(Collections.singletonMap(getModule(), asList(file2)), Collections.emptyList(), TriggerType.EDITOR_CHANGE, null);
+    manager.submitBackground(Collections.singletonMap(getModule(), asList(file1)), Collections.emptyList(), TriggerType.EDITOR_CHANGE, null);
+
+    ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor).submit(runnableCaptor.capture());
+    new Thread(runnableCaptor.getValue()).start();
+
+    ArgumentCaptor<SonarLintJob> jobCaptor = ArgumentCaptor.forClass(SonarLintJob.class);
+    verify(taskListener, timeout(3000)).ended(jobCaptor.capture());
+    assertThat(jobCaptor.getValue().allFiles()).containsOnly(file1, file2);
+    assertThat(jobCaptor.getValue().allFiles().count()).isEqualTo(2);
+  }
+
+  @Test
+  public void should_not_merge_background_jobs_of_different_triggers() {
+    ExecutorService executor = mock(ExecutorService.class);
+    manager = new SonarLintJobManager(getProject(), executor);
+
+    manager.submitBackground(mockFiles(), Collections.emptyList(), TriggerType.EDITOR_CHANGE, null);
+    manager.submitBackground(mockFiles(), Collections.emptyList(), TriggerType.EDITOR_OPEN, null);
+
+    verify(executor, times(2)).submit(any(Runnable.class));
+  }
+
+  @Test
+  public void should_run_interactive_jobs_first() {
+    ExecutorService executor = mock(ExecutorService.class);
+    manager = new SonarLintJobManager(getProject(), executor);
+    VirtualFile file1 = myFixture.addFileToProject("Foo.java", "class Foo {}").getVirtualFile();
+    VirtualFile file2 = myFixture.addFileToProject("Bar.java", "class Bar {}").getVirtualFile();
+
+    manager.submitBackground(Collections.singletonMap(getModule(), asList(file1)), Collections.emptyList(), TriggerType.COMPILATION, null);
+    manager.submitBackground(Collections.singletonMap(getModule(), asList(file2)), Collections.emptyList(), TriggerType.EDITOR_CHANGE, null);
+
+    ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor, times(2)).submit(runnableCaptor.capture());
+    new Thread(runnableCaptor.getAllValues().get(0)).start();
+
+    ArgumentCaptor<SonarLintJob> jobCaptor = ArgumentCaptor.forClass(SonarLintJob.class);
+    verify(taskListener, timeout(3000)).ended(jobCaptor.capture());
+    assertThat(jobCaptor.getValue().trigger()).isEqualTo(TriggerType.EDITOR_CHANGE);
+    assertThat(jobCaptor.getValue().allFiles()).containsOnly(file2);
+  }
+
+  @Test
+  public void should_cancel_running_editor_change_of_same_files() throws InterruptedException {
+    ExecutorService executor = mock(ExecutorService.class);
+    manager = new SonarLintJobManager(getProject(), executor);
+    VirtualFile file1 = myFixture.addFileToProject("Foo.java", "class Foo {}").getVirtualFile();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicBoolean canceled = new AtomicBoolean();
+    mockAnalysis(started, release, canceled);
+
+    manager.submitBackground(Collections.singletonMap(getModule(), asList(file1)), Collections.emptyList(), TriggerType.EDITOR_CHANGE, null);
+    ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor).submit(runnableCaptor.capture());
+    new Thread(runnableCaptor.getValue()).start();
+    assertThat(started.await(3, TimeUnit.SECONDS)).isTrue();
+
+    manager.submitBackground(Collections.singletonMap(getModule(), asList(file1)), Collections.emptyList(), TriggerType.EDITOR_CHANGE, null);
+
+    verify(taskListener, timeout(3000)).ended(any(SonarLintJob.class));
+    assertThat(canceled.get()).isTrue();
+  }
+
+  @Test
+  public void should_not_cancel_running_analysis_of_other_files_or_triggers() throws InterruptedException {
+    ExecutorService executor = mock(ExecutorService.class);
+    manager = new SonarLintJobManager(getProject(), executor);
+    VirtualFile file1 = myFixture.addFileToProject("Foo.java", "class Foo {}").getVirtualFile();
+    VirtualFile file2 = myFixture.addFileToProject("Bar.java", "class Bar {}").getVirtualFile();
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    AtomicBoolean canceled = new AtomicBoolean();
+    mockAnalysis(started, release, canceled);
+
+    manager.submitBackground(Collections.singletonMap(getModule(), asList(file1)), Collections.emptyList(), TriggerType.EDITOR_CHANGE, null);
+    ArgumentCaptor<Runnable> runnableCaptor = ArgumentCaptor.forClass(Runnable.class);
+    verify(executor).submit(runnableCaptor.capture());
+    new Thread(runnableCaptor.getValue()).start();
+    assertThat(started.await(3, TimeUnit.SECONDS)).isTrue();
+
+    manager.submitBackground(Collections.singletonMap(getModule(), asList(file2)), Collections.emptyList(), TriggerType.EDITOR_CHANGE, null);
+    manager.submitBackground(Collections.singletonMap(getModule(), asList(file1)), Collections.emptyList(), TriggerType.EDITOR_OPEN, null);
+    release.countDown();
+
+    verify(taskListener, timeout(3000)).ended(any(SonarLintJob.class));
+    assertThat(canceled.get()).isFalse();
+  }
+
+  /**
+   * The analysis blocks until it is canceled or released
+   */
+  private void mockAnalysis(CountDownLatch started, CountDownLatch release, AtomicBoolean canceled) {
+    SonarLintAnalyzer analyzer = mock(SonarLintAnalyzer.class);
+    AnalysisResults results = mock(AnalysisResults.class);
+    when(results.failedAnalysisFiles()).thenReturn(Collections.emptyList());
+    when(analyzer.analyzeModule(any(Module.class), anyCollection(), any(IssueListener.class), any(ProgressMonitor.class))).thenAnswer(invocation -> {
+      ProgressMonitor monitor = invocation.getArgument(3);
+      started.countDown();
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (!monitor.isCanceled() && !release.await(10, TimeUnit.MILLISECONDS) && System.currentTimeMillis() < deadline) {
+        // wait
+      }
+      if (monitor.isCanceled()) {
+        canceled.set(true);
+        throw new CanceledException();
+      }
+      return results;
+    });
+    IssueProcessor processor = mock(IssueProcessor.class);
+    when(processor.processFiles(anyCollection(), anyCollection(), anyCollection())).thenReturn(Collections.emptyMap());
+    ComponentManagerImpl container = (ComponentManagerImpl) getProject();
+    container.replaceServiceInstance(SonarLintAnalyzer.class, analyzer, myFixture.getTestRootDisposable());
+    container.replaceServiceInstance(IssueProcessor.class, processor, myFixture.getTestRootDisposable());
+  }
+
   private Map<Module, Collection<VirtualFile>> mockFiles() {
     return Collections.singletonMap(getModule(), asList(myFixture.getFile()));
   }
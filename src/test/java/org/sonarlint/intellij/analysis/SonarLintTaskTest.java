@@ -22,10 +22,12 @@ package org.sonarlint.intellij.analysis;
 import com.intellij.lang.LanguageExtensionPoint;
 import com.intellij.openapi.extensions.ExtensionPoint;
 import com.intellij.openapi.extensions.Extensions;
+import com.intellij.openapi.progress.EmptyProgressIndicator;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.vfs.VirtualFile;
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 import org.sonarlint.intellij.AbstractSonarLintLightTests;
@@ -41,12 +43,16 @@ import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -99,7 +105,11 @@ public class SonarLintTaskTest extends AbstractSonarLintLightTests {
 
 
     verify(sonarLintAnalyzer).analyzeModule(eq(getModule()), eq(files), any(IssueListener.class), any(ProgressMonitor.class));
-    verify(processor).process(job, progress, new ArrayList<>(), new ArrayList<>());
+    InOrder inOrder = inOrder(processor);
+    // issues are cleared before the issues of analyzed files are stored
+    inOrder.verify(processor).clearIssues(job);
+    inOrder.verify(processor).processFiles(files, new ArrayList<>(), new ArrayList<>());
+    inOrder.verify(processor).process(job, progress, new HashMap<>(), new ArrayList<>());
     verify(listener).ended(job);
 
     assertThat(getExternalAnnotators())
@@ -109,6 +119,87 @@ public class SonarLintTaskTest extends AbstractSonarLintLightTests {
     verifyNoMoreInteractions(processor);
   }
 
+  @Test
+  public void should_not_analyze_when_canceled_before_running() {
+    TaskListener listener = mock(TaskListener.class);
+    getProject().getMessageBus().connect(getProject()).subscribe(TaskListener.SONARLINT_TASK_TOPIC, listener);
+    ProgressIndicator indicator = new EmptyProgressIndicator();
+
+    task.cancel();
+    task.run(indicator);
+
+    assertThat(indicator.isCanceled()).isTrue();
+    verifyZeroInteractions(sonarLintAnalyzer);
+    verifyZeroInteractions(processor);
+    verify(listener).ended(job);
+  }
+
+  @Test
+  public void should_split_batch_analysis_in_chunks() {
+    files.add(mock(VirtualFile.class));
+    when(sonarLintAnalyzer.analyzeModule(eq(getModule()), anyCollection(), any(IssueListener.class), any(ProgressMonitor.class))).thenReturn(analysisResults);
+
+    System.setProperty(SonarLintTask.BATCH_CHUNK_SIZE_PROPERTY_KEY, "1");
+    try {
+      task.run(progress);
+    } finally {
+      System.clearProperty(SonarLintTask.BATCH_CHUNK_SIZE_PROPERTY_KEY);
+    }
+
+    verify(sonarLintAnalyzer, times(2)).analyzeModule(eq(getModule()), argThat(chunk -> chunk.size() == 1), any(IssueListener.class), any(ProgressMonitor.class));
+    verify(processor, times(2)).processFiles(argThat(chunk -> chunk.size() == 1), eq(new ArrayList<>()), eq(new ArrayList<>()));
+    verify(processor).process(job, progress, new HashMap<>(), new ArrayList<>());
+  }
+
+  @Test
+  public void should_analyze_chunks_in_parallel() {
+    files.add(mock(VirtualFile.class));
+    when(sonarLintAnalyzer.analyzeModule(eq(getModule()), anyCollection(), any(IssueListener.class), any(ProgressMonitor.class))).thenReturn(analysisResults);
+
+    System.setProperty(SonarLintTask.BATCH_CHUNK_SIZE_PROPERTY_KEY, "1");
+    System.setProperty(SonarLintTask.PARALLELISM_PROPERTY_KEY, "2");
+    try {
+      task.run(progress);
+    } finally {
+      System.clearProperty(SonarLintTask.BATCH_CHUNK_SIZE_PROPERTY_KEY);
+      System.clearProperty(SonarLintTask.PARALLELISM_PROPERTY_KEY);
+    }
+
+    verify(sonarLintAnalyzer, times(2)).analyzeModule(eq(getModule()), argThat(chunk -> chunk.size() == 1), any(IssueListener.class), any(ProgressMonitor.class));
+    verify(processor, times(2)).processFiles(argThat(chunk -> chunk.size() == 1), eq(new ArrayList<>()), eq(new ArrayList<>()));
+    verify(processor).process(job, progress, new HashMap<>(), new ArrayList<>());
+  }
+
+  @Test
+  public void should_not_start_chunks_while_yielding_to_more_urgent_jobs() {
+    files.add(mock(VirtualFile.class));
+    files.add(mock(VirtualFile.class));
+    AtomicInteger started = new AtomicInteger();
+    when(sonarLintAnalyzer.analyzeModule(eq(getModule()), anyCollection(), any(IssueListener.class), any(ProgressMonitor.class))).thenAnswer(invocation -> {
+      started.incrementAndGet();
+      return analysisResults;
+    });
+    List<Integer> startedWhenYielding = new ArrayList<>();
+    SonarLintJobManager jobManager = mock(SonarLintJobManager.class);
+    doAnswer(invocation -> startedWhenYielding.add(started.get())).when(jobManager).yieldToMoreUrgentJobs(job);
+    replaceProjectService(SonarLintJobManager.class, jobManager);
+
+    System.setProperty(SonarLintTask.BATCH_CHUNK_SIZE_PROPERTY_KEY, "1");
+    System.setProperty(SonarLintTask.PARALLELISM_PROPERTY_KEY, "2");
+    try {
+      task.run(progress);
+    } finally {
+      System.clearProperty(SonarLintTask.BATCH_CHUNK_SIZE_PROPERTY_KEY);
+      System.clearProperty(SonarLintTask.PARALLELISM_PROPERTY_KEY);
+    }
+
+    // before the second and third chunks, at most one chunk is started ahead
+    assertThat(startedWhenYielding).hasSize(2);
+    assertThat(startedWhenYielding.get(0)).isLessThanOrEqualTo(2);
+    assertThat(startedWhenYielding.get(1)).isLessThanOrEqualTo(3);
+    assertThat(started.get()).isEqualTo(3);
+  }
+
   @Test
   public void testCallListenerOnError() {
     TaskListener listener = mock(TaskListener.class);
@@ -117,8 +208,9 @@ public class SonarLintTaskTest extends AbstractSonarLintLightTests {
     doThrow(new IllegalStateException("error")).when(sonarLintAnalyzer).analyzeModule(eq(getModule()), eq(files), any(IssueListener.class), any(ProgressMonitor.class));
     task.run(progress);
 
-    // never called because of error
-    verifyZeroInteractions(processor);
+    // issues never processed because of error
+    verify(processor).clearIssues(job);
+    verifyNoMoreInteractions(processor);
 
     // still called
     verify(listener).ended(job);
@@ -21,6 +21,8 @@ package org.sonarlint.intellij.core;
 
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -36,6 +38,7 @@ import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneSonarLintE
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -71,6 +74,62 @@ public class SonarLintEngineManagerTest extends AbstractSonarLintLightTests {
     verify(engineFactory, Mockito.times(1)).createEngine();
   }
 
+  @Test
+  public void should_only_use_main_standalone_engine_by_default() {
+    assertThat(manager.acquireStandaloneEngines(4)).containsExactly(standaloneEngine);
+    verify(engineFactory, Mockito.times(1)).createEngine();
+  }
+
+  @Test
+  public void should_lend_additional_engines_to_one_analysis_at_a_time() {
+    StandaloneSonarLintEngine engine2 = mock(StandaloneSonarLintEngine.class);
+    StandaloneSonarLintEngine engine3 = mock(StandaloneSonarLintEngine.class);
+    when(engineFactory.createEngine()).thenReturn(standaloneEngine, engine2, engine3);
+    manager = new SonarLintEngineManager(engineFactory, () -> 3);
+
+    List<StandaloneSonarLintEngine> first = manager.acquireStandaloneEngines(4);
+    assertThat(first).containsExactly(standaloneEngine, engine2, engine3);
+    // the main engine is shared, the others are all lent
+    assertThat(manager.acquireStandaloneEngines(4)).containsExactly(standaloneEngine);
+
+    manager.releaseStandaloneEngines(first);
+    assertThat(manager.acquireStandaloneEngines(2)).containsExactly(standaloneEngine, engine2);
+    assertThat(manager.acquireStandaloneEngines(2)).containsExactly(standaloneEngine, engine3);
+    verify(engineFactory, Mockito.times(3)).createEngine();
+  }
+
+  @Test
+  public void should_stop_additional_engines_when_pool_limit_is_lowered() {
+    StandaloneSonarLintEngine engine2 = mock(StandaloneSonarLintEngine.class);
+    StandaloneSonarLintEngine engine3 = mock(StandaloneSonarLintEngine.class);
+    when(engineFactory.createEngine()).thenReturn(standaloneEngine, engine2, engine3);
+    AtomicInteger limit = new AtomicInteger(3);
+    manager = new SonarLintEngineManager(engineFactory, limit::get);
+
+    List<StandaloneSonarLintEngine> engines = manager.acquireStandaloneEngines(3);
+    limit.set(2);
+    // engines being used are not stopped
+    assertThat(manager.acquireStandaloneEngines(3)).containsExactly(standaloneEngine);
+    verify(engine2, never()).stop();
+    verify(engine3, never()).stop();
+
+    manager.releaseStandaloneEngines(engines);
+    verify(engine2).stop();
+    verify(engine3, never()).stop();
+    assertThat(manager.acquireStandaloneEngines(3)).containsExactly(standaloneEngine, engine3);
+    verify(standaloneEngine, never()).stop();
+  }
+
+  @Test
+  public void should_cap_standalone_pool_size() {
+    long gb = 1024L * 1024 * 1024;
+    assertThat(SonarLintEngineManager.maxPoolSize(4, 8, 8 * gb)).isEqualTo(4);
+    assertThat(SonarLintEngineManager.maxPoolSize(4, 2, 8 * gb)).isEqualTo(2);
+    assertThat(SonarLintEngineManager.maxPoolSize(4, 8, 2 * gb)).isEqualTo(2);
+    assertThat(SonarLintEngineManager.maxPoolSize(4, 8, gb / 2)).isEqualTo(1);
+    assertThat(SonarLintEngineManager.maxPoolSize(0, 8, 8 * gb)).isEqualTo(1);
+  }
+
   @Test
   public void should_get_connected() {
     assertThat(manager.getConnectedEngine("server1")).isEqualTo(connectedEngine);
@@ -19,26 +19,37 @@
  */
 package org.sonarlint.intellij.core;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonarlint.intellij.AbstractSonarLintLightTests;
 import org.sonarsource.sonarlint.core.client.api.common.LogOutput;
 import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.AnalysisResults;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueListener;
 import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneAnalysisConfiguration;
 import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneRuleDetails;
 import org.sonarsource.sonarlint.core.client.api.standalone.StandaloneSonarLintEngine;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class StandaloneSonarLintFacadeTest extends AbstractSonarLintLightTests {
   private final StandaloneSonarLintEngine engine = mock(StandaloneSonarLintEngine.class);
+  private final ExecutorService shardExecutor = Executors.newCachedThreadPool();
   private StandaloneSonarLintFacade facade;
 
   @Before
@@ -46,6 +57,11 @@ public class StandaloneSonarLintFacadeTest extends AbstractSonarLintLightTests {
     facade = new StandaloneSonarLintFacade(getProject(), engine);
   }
 
+  @After
+  public void after() {
+    shardExecutor.shutdownNow();
+  }
+
   @Test
   public void should_get_rule_name() {
     StandaloneRuleDetails ruleDetails = mock(StandaloneRuleDetails.class);
@@ -77,4 +93,57 @@ public class StandaloneSonarLintFacadeTest extends AbstractSonarLintLightTests {
     when(engine.analyze(any(StandaloneAnalysisConfiguration.class), any(IssueListener.class), any(LogOutput.class), any(ProgressMonitor.class))).thenReturn(results);
     assertThat(facade.startAnalysis(Collections.emptyList(), mock(IssueListener.class), Collections.emptyMap(), mock(ProgressMonitor.class))).isEqualTo(results);
   }
+
+  @Test
+  public void should_analyze_shards_with_engine_pool() {
+    StandaloneSonarLintEngine engine2 = mock(StandaloneSonarLintEngine.class);
+    List<StandaloneSonarLintEngine> released = new ArrayList<>();
+    facade = new StandaloneSonarLintFacade(getProject(), engine, count -> Arrays.asList(engine, engine2), released::addAll, shardExecutor);
+    AnalysisResults results = mock(AnalysisResults.class);
+    when(results.fileCount()).thenReturn(StandaloneSonarLintFacade.MIN_SHARD_SIZE);
+    when(engine.analyze(any(StandaloneAnalysisConfiguration.class), any(IssueListener.class), any(LogOutput.class), any(ProgressMonitor.class))).thenReturn(results);
+    when(engine2.analyze(any(StandaloneAnalysisConfiguration.class), any(IssueListener.class), any(LogOutput.class), any(ProgressMonitor.class))).thenReturn(results);
+
+    List<ClientInputFile> inputFiles = new ArrayList<>();
+    for (int i = 0; i < 2 * StandaloneSonarLintFacade.MIN_SHARD_SIZE; i++) {
+      inputFiles.add(mock(ClientInputFile.class));
+    }
+
+    AnalysisResults merged = facade.startAnalysis(inputFiles, mock(IssueListener.class), Collections.emptyMap(), mock(ProgressMonitor.class));
+
+    assertThat(merged.fileCount()).isEqualTo(2 * StandaloneSonarLintFacade.MIN_SHARD_SIZE);
+    verify(engine).analyze(any(StandaloneAnalysisConfiguration.class), any(IssueListener.class), any(LogOutput.class), any(ProgressMonitor.class));
+    verify(engine2).analyze(any(StandaloneAnalysisConfiguration.class), any(IssueListener.class), any(LogOutput.class), any(ProgressMonitor.class));
+    assertThat(released).containsExactly(engine, engine2);
+  }
+
+  @Test
+  public void should_cancel_other_shards_and_wait_for_them_before_releasing_engines() {
+    StandaloneSonarLintEngine engine2 = mock(StandaloneSonarLintEngine.class);
+    AtomicBoolean otherShardFinished = new AtomicBoolean();
+    List<Boolean> finishedWhenReleased = new ArrayList<>();
+    facade = new StandaloneSonarLintFacade(getProject(), engine, count -> Arrays.asList(engine, engine2),
+      engines -> finishedWhenReleased.add(otherShardFinished.get()), shardExecutor);
+    when(engine.analyze(any(StandaloneAnalysisConfiguration.class), any(IssueListener.class), any(LogOutput.class), any(ProgressMonitor.class)))
+      .thenThrow(new IllegalStateException("failed"));
+    when(engine2.analyze(any(StandaloneAnalysisConfiguration.class), any(IssueListener.class), any(LogOutput.class), any(ProgressMonitor.class)))
+      .thenAnswer(invocation -> {
+        ProgressMonitor monitor = invocation.getArgument(3);
+        while (!monitor.isCanceled()) {
+          Thread.sleep(10);
+        }
+        otherShardFinished.set(true);
+        return mock(AnalysisResults.class);
+      });
+
+    List<ClientInputFile> inputFiles = new ArrayList<>();
+    for (int i = 0; i < 2 * StandaloneSonarLintFacade.MIN_SHARD_SIZE; i++) {
+      inputFiles.add(mock(ClientInputFile.class));
+    }
+
+    Throwable thrown = catchThrowable(() -> facade.startAnalysis(inputFiles, mock(IssueListener.class), Collections.emptyMap(), mock(ProgressMonitor.class)));
+
+    assertThat(thrown).isInstanceOf(IllegalStateException.class).hasMessage("failed");
+    assertThat(finishedWhenReleased).containsExactly(true);
+  }
 }
@@ -26,6 +26,7 @@ import com.intellij.lang.annotation.HighlightSeverity;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.RangeMarker;
 import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import java.util.Collection;
@@ -41,7 +42,6 @@ import org.sonarlint.intellij.issue.LiveIssue;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
@@ -138,7 +138,9 @@ public class SonarExternalAnnotatorTest extends AbstractSonarLintLightTests {
     when(range.getEndOffset()).thenReturn(rangeEnd);
     when(range.isValid()).thenReturn(true);
     when(range.getDocument()).thenReturn(document);
-    when(document.getText(any(TextRange.class))).thenReturn(text);
+    // the text of the issue at its offsets in the document, padded with whitespaces that are ignored by checksums
+    String content = StringUtil.repeat(" ", rangeStart) + text + StringUtil.repeat(" ", Math.max(0, rangeEnd - rangeStart - text.length()));
+    when(document.getImmutableCharSequence()).thenReturn(content);
     return new LiveIssue(issue, mock(PsiFile.class), range, null);
   }
 }
@@ -0,0 +1,73 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.editor;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonarlint.intellij.SonarLintTestUtils;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StreamingIssueListenerTest {
+  private StreamingIssueListener listener;
+  private VirtualFile file1 = mock(VirtualFile.class);
+  private VirtualFile file2 = mock(VirtualFile.class);
+
+  @Before
+  public void setUp() {
+    listener = new StreamingIssueListener();
+  }
+
+  @Test
+  public void test_issue_listener() {
+    for (int i = 0; i < 5; i++) {
+      listener.handle(createFileIssue(i, i % 2 == 0 ? file1 : file2));
+    }
+
+    assertThat(listener.count()).isEqualTo(5);
+    assertThat(listener.take(Collections.singletonList(file1))).extracting(Issue::getRuleKey).containsExactly("0", "2", "4");
+    assertThat(listener.take(Arrays.asList(file1, file2))).extracting(Issue::getRuleKey).containsExactly("1", "3");
+    assertThat(listener.take(Arrays.asList(file1, file2))).isEmpty();
+    assertThat(listener.count()).isEqualTo(5);
+  }
+
+  @Test
+  public void should_ignore_project_level_issues() {
+    listener.handle(SonarLintTestUtils.createIssue(0));
+
+    assertThat(listener.count()).isEqualTo(1);
+    assertThat(listener.take(Collections.singletonList(file1))).isEmpty();
+  }
+
+  private static Issue createFileIssue(int id, VirtualFile file) {
+    Issue issue = SonarLintTestUtils.createIssue(id);
+    ClientInputFile inputFile = mock(ClientInputFile.class);
+    when(inputFile.getClientObject()).thenReturn(file);
+    when(issue.getInputFile()).thenReturn(inputFile);
+    return issue;
+  }
+}
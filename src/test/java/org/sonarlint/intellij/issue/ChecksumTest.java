@@ -0,0 +1,64 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.junit.Test;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ChecksumTest {
+  @Test
+  public void should_ignore_whitespaces() {
+    assertThat(Checksum.of(" int a =\t1;\r\n")).isEqualTo(Checksum.of("inta=1;"));
+    assertThat(Checksum.of("int a = 1;")).isNotEqualTo(Checksum.of("int a = 2;"));
+  }
+
+  @Test
+  public void should_compute_same_checksum_as_stored_ones() {
+    String[] texts = {"", "   ", "int a = 1;", "caf\u00e9 \u4e2d\u6587", "smile \ud83d\ude00", "split \ud83d \ude00", "lone \ud800 and \udc00",
+      "vertical\u000btab\fform feed", "non\u00a0breaking"};
+    for (String text : texts) {
+      assertThat(Checksum.of(text)).as(text).isEqualTo(legacyChecksum(text));
+    }
+  }
+
+  @Test
+  public void should_only_read_range() {
+    String text = "foo(); bar();";
+    assertThat(Checksum.of(text, 7, text.length())).isEqualTo(legacyChecksum("bar();"));
+  }
+
+  @Test
+  public void should_stream_long_texts() {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < 10_000; i++) {
+      builder.append("line ").append(i).append(" \u00e9\n");
+    }
+    String text = builder.toString();
+    assertThat(Checksum.of(text)).isEqualTo(legacyChecksum(text));
+  }
+
+  private static int legacyChecksum(String content) {
+    return Hex.encodeHexString(DigestUtils.getMd5Digest().digest(content.replaceAll("[\\s]", "").getBytes(UTF_8))).hashCode();
+  }
+}
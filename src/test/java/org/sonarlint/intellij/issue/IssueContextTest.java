@@ -0,0 +1,91 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.List;
+import org.junit.Test;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class IssueContextTest {
+  private final VirtualFile file = mock(VirtualFile.class);
+
+  @Test
+  public void should_not_build_context_without_flows() {
+    assertThat(new IssueContext.Builder().build(file, 1)).isNull();
+  }
+
+  @Test
+  public void should_group_flows_of_single_locations_sorted_by_offset() {
+    IssueContext.Builder builder = new IssueContext.Builder();
+    builder.addLocation(20, 25, "second");
+    builder.endFlow();
+    builder.addLocation(10, 15, "first");
+    builder.endFlow();
+    IssueContext context = builder.build(file, 1);
+
+    assertThat(context.hasUniqueFlow()).isTrue();
+    assertThat(context.getSummaryDescription()).isEqualTo(" [+2 locations]");
+    assertThat(context.locationCount()).isEqualTo(2);
+    assertThat(context.flows()).hasSize(1);
+    assertThat(messages(context.flows().get(0))).containsExactly("first", "second");
+    assertThat(context.flows().get(0).locations().get(0).startOffset()).isEqualTo(10);
+  }
+
+  @Test
+  public void should_reverse_locations_of_data_flows() {
+    IssueContext.Builder builder = new IssueContext.Builder();
+    for (int flow = 0; flow < 3; flow++) {
+      for (int i = 0; i < 5; i++) {
+        builder.addLocation(i, i + 1, "flow " + flow + " location " + i);
+      }
+      builder.endFlow();
+    }
+    IssueContext context = builder.build(file, 1);
+
+    assertThat(context.hasUniqueFlow()).isFalse();
+    assertThat(context.getSummaryDescription()).isEqualTo(" [+3 flows]");
+    assertThat(context.locationCount()).isEqualTo(15);
+    assertThat(context.flows()).hasSize(3);
+    assertThat(messages(context.flows().get(1))).containsExactly("flow 1 location 4", "flow 1 location 3", "flow 1 location 2",
+      "flow 1 location 1", "flow 1 location 0");
+    assertThat(context.flows()).isSameAs(context.flows());
+  }
+
+  @Test
+  public void should_count_locations_of_unique_flow() {
+    IssueContext.Builder builder = new IssueContext.Builder();
+    builder.addLocation(0, 1, null);
+    builder.addLocation(2, 3, "msg");
+    builder.endFlow();
+    IssueContext context = builder.build(file, 1);
+
+    assertThat(context.hasUniqueFlow()).isTrue();
+    assertThat(context.getSummaryDescription()).isEqualTo(" [+2 locations]");
+    assertThat(context.locationMessages()).containsExactly(null, "msg");
+  }
+
+  private static List<String> messages(LiveIssue.Flow flow) {
+    return flow.locations().stream().map(LiveIssue.SecondaryLocation::message).collect(toList());
+  }
+}
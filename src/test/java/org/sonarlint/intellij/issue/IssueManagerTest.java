@@ -21,11 +21,12 @@ package org.sonarlint.intellij.issue;
 
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.editor.RangeMarker;
-import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.ArgumentCaptor;
@@ -33,13 +34,20 @@ import org.mockito.Captor;
 import org.mockito.MockitoAnnotations;
 import org.sonarlint.intellij.AbstractSonarLintLightTests;
 import org.sonarlint.intellij.SonarLintTestUtils;
+import org.sonarlint.intellij.issue.persistence.IssuePersistence;
 import org.sonarlint.intellij.issue.persistence.LiveIssueCache;
+import org.sonarlint.intellij.messages.IssueStoreListener;
+import org.sonarlint.intellij.trigger.SonarLintSubmitter;
+import org.sonarlint.intellij.trigger.TriggerType;
 import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -245,19 +253,69 @@ public class IssueManagerTest extends AbstractSonarLintLightTests {
     assertThat(fileIssues.iterator().next().getCreationDate()).isEqualTo(creationDate);
   }
 
+  @Test
+  public void should_track_all_files_and_notify_once() {
+    VirtualFile file2 = mock(VirtualFile.class);
+    when(file2.isValid()).thenReturn(true);
+    when(file2.getPath()).thenReturn("file2");
+    when(cache.contains(file2)).thenReturn(true);
+    when(cache.getLive(file2)).thenReturn(Collections.emptyList());
+    IssueStoreListener listener = mock(IssueStoreListener.class);
+    getProject().getMessageBus().connect(getProject()).subscribe(IssueStoreListener.SONARLINT_ISSUE_STORE_TOPIC, listener);
+
+    Map<VirtualFile, Collection<LiveIssue>> issues = new HashMap<>();
+    issues.put(file1, Collections.singletonList(createRangeStoredIssue(1, "issue 1", 10)));
+    issues.put(file2, Collections.singletonList(createRangeStoredIssue(2, "issue 2", 20)));
+    manager.store(issues);
+
+    verify(cache).save(eq(file1), any());
+    verify(cache).save(eq(file2), any());
+    verify(listener).filesChanged(issues);
+  }
+
   @Test
   public void testClear() {
     manager.clear();
     verify(cache).clear();
   }
 
+  @Test
+  public void should_swap_store_on_branch_change() {
+    IssuePersistence store = mock(IssuePersistence.class);
+    SonarLintSubmitter submitter = mock(SonarLintSubmitter.class);
+    replaceProjectService(IssuePersistence.class, store);
+    replaceProjectService(SonarLintSubmitter.class, submitter);
+    doAnswer(invocation -> {
+      invocation.<Runnable>getArgument(0).run();
+      return null;
+    }).when(cache).switchStore(any(Runnable.class));
+
+    manager.switchBranch("feature");
+
+    verify(store).switchBranch("feature");
+    verify(submitter).submitOpenFilesAuto(TriggerType.BRANCH_CHANGE);
+  }
+
+  @Test
+  public void should_not_swap_store_if_same_branch() {
+    IssuePersistence store = mock(IssuePersistence.class);
+    when(store.getBranch()).thenReturn("feature");
+    replaceProjectService(IssuePersistence.class, store);
+
+    manager.switchBranch("feature");
+
+    verify(cache, never()).switchStore(any(Runnable.class));
+  }
+
   private LiveIssue createRangeStoredIssue(int id, String rangeContent, int line) {
     Issue issue = SonarLintTestUtils.createIssue(id);
     when(issue.getStartLine()).thenReturn(line);
     RangeMarker range = mock(RangeMarker.class);
     when(range.isValid()).thenReturn(true);
+    when(range.getEndOffset()).thenReturn(rangeContent.length());
     when(range.getDocument()).thenReturn(document);
-    when(document.getText(any(TextRange.class))).thenReturn(rangeContent);
+    when(document.getImmutableCharSequence()).thenReturn(rangeContent);
+    when(document.getLineEndOffset(anyInt())).thenReturn(rangeContent.length());
     PsiFile psiFile = mock(PsiFile.class);
     when(psiFile.isValid()).thenReturn(true);
     return new LiveIssue(issue, psiFile, range, null);
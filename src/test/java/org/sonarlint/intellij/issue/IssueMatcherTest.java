@@ -0,0 +1,93 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.vfs.VirtualFile;
+import javax.annotation.Nullable;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonarlint.intellij.AbstractSonarLintLightTests;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.IssueLocation;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class IssueMatcherTest extends AbstractSonarLintLightTests {
+  // lines start at offsets 0, 12, 23, 24, 29 and 38
+  private static final String CODE = "class Foo {\n    int a;\n\n    \n  int b;\n}\n";
+  private IssueMatcher matcher;
+
+  @Before
+  public void prepare() {
+    matcher = new IssueMatcher(getProject());
+  }
+
+  @Test
+  public void should_match_with_psi_in_editor() throws IssueMatcher.NoMatchException {
+    VirtualFile file = myFixture.configureByText("Foo.java", CODE).getVirtualFile();
+
+    assertThat(ReadAction.compute(() -> matcher.forFile(file).isInEditor())).isTrue();
+    assertMatches(file);
+  }
+
+  @Test
+  public void should_match_text_without_psi() throws IssueMatcher.NoMatchException {
+    VirtualFile file = myFixture.addFileToProject("Bar.java", CODE).getVirtualFile();
+
+    assertThat(ReadAction.compute(() -> matcher.forFile(file).isInEditor())).isFalse();
+    assertMatches(file);
+  }
+
+  @Test(expected = IssueMatcher.NoMatchException.class)
+  public void should_fail_if_lines_not_in_file() throws IssueMatcher.NoMatchException {
+    VirtualFile file = myFixture.addFileToProject("Bar.java", CODE).getVirtualFile();
+
+    match(file, 10, null, 10, null);
+  }
+
+  /**
+   * Both modes must give the same ranges
+   */
+  private void assertMatches(VirtualFile file) throws IssueMatcher.NoMatchException {
+    // leading whitespaces are skipped
+    assertThat(match(file, 2, null, 2, null)).isEqualTo(new TextRange(16, 22));
+    // precise location
+    assertThat(match(file, 2, 2, 2, 5)).isEqualTo(new TextRange(14, 17));
+    // whitespaces until the end of the range are kept
+    assertThat(match(file, 2, 0, 2, 3)).isEqualTo(new TextRange(12, 15));
+    // whitespaces until another line are kept
+    assertThat(match(file, 4, null, 5, null)).isEqualTo(new TextRange(24, 37));
+    // end offset after the end of the line
+    assertThat(match(file, 5, 2, 5, 100)).isEqualTo(new TextRange(31, 37));
+  }
+
+  private TextRange match(VirtualFile file, int startLine, @Nullable Integer startLineOffset, int endLine, @Nullable Integer endLineOffset)
+    throws IssueMatcher.NoMatchException {
+    IssueLocation location = mock(IssueLocation.class);
+    when(location.getStartLine()).thenReturn(startLine);
+    when(location.getStartLineOffset()).thenReturn(startLineOffset);
+    when(location.getEndLine()).thenReturn(endLine);
+    when(location.getEndLineOffset()).thenReturn(endLineOffset);
+    return ReadAction.compute(() -> matcher.forFile(file).match(location));
+  }
+}
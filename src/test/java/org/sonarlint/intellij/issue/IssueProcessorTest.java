@@ -0,0 +1,119 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import javax.annotation.Nullable;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonarlint.intellij.AbstractSonarLintLightTests;
+import org.sonarlint.intellij.ui.SonarLintConsole;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.ClientInputFile;
+import org.sonarsource.sonarlint.core.client.api.common.analysis.Issue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IssueProcessorTest extends AbstractSonarLintLightTests {
+  // lines start at offsets 0, 12, 23, 24, 29 and 38
+  private static final String CODE = "class Foo {\n    int a;\n\n    \n  int b;\n}\n";
+  private IssueManager manager = mock(IssueManager.class);
+  private IssueProcessor processor;
+
+  @Before
+  public void prepare() {
+    replaceProjectService(IssueManager.class, manager);
+    replaceProjectService(SonarLintConsole.class, mock(SonarLintConsole.class));
+    processor = new IssueProcessor(getProject());
+  }
+
+  @Test
+  public void should_match_all_issues_of_a_file() {
+    VirtualFile file = myFixture.addFileToProject("Foo.java", CODE).getVirtualFile();
+    ClientInputFile inputFile = inputFile(file);
+    Issue fileIssue = issue(inputFile, "rule1", null);
+    Issue issue1 = issue(inputFile, "rule2", 5);
+    Issue issue2 = issue(inputFile, "rule3", 2);
+
+    Map<VirtualFile, Collection<LiveIssue>> issues = processor.processFiles(Collections.singleton(file), Arrays.asList(fileIssue, issue1, issue2),
+      Collections.emptyList());
+
+    assertThat(issues).containsOnlyKeys(file);
+    assertThat(issues.get(file))
+      .extracting(LiveIssue::getRuleKey, LiveIssue::isFileLevel, LiveIssue::getStartOffset)
+      .containsExactly(
+        tuple("rule1", true, 0),
+        tuple("rule2", false, 31),
+        tuple("rule3", false, 16));
+    verify(manager).store(issues);
+  }
+
+  @Test
+  public void should_not_refresh_file_if_an_issue_is_not_found() {
+    VirtualFile file = myFixture.addFileToProject("Foo.java", CODE).getVirtualFile();
+    ClientInputFile inputFile = inputFile(file);
+    Issue issue = issue(inputFile, "rule1", 2);
+    Issue outOfFile = issue(inputFile, "rule2", 100);
+
+    Map<VirtualFile, Collection<LiveIssue>> issues = processor.processFiles(Collections.singleton(file), Arrays.asList(issue, outOfFile),
+      Collections.emptyList());
+
+    assertThat(issues).isEmpty();
+  }
+
+  @Test
+  public void should_keep_files_without_issues_and_ignore_failed_files() {
+    VirtualFile file = myFixture.addFileToProject("Foo.java", CODE).getVirtualFile();
+    VirtualFile failed = myFixture.addFileToProject("Bar.java", CODE).getVirtualFile();
+    ClientInputFile failedInputFile = inputFile(failed);
+
+    Map<VirtualFile, Collection<LiveIssue>> issues = processor.processFiles(Arrays.asList(file, failed),
+      Collections.singletonList(issue(failedInputFile, "rule1", 2)), Collections.singletonList(failedInputFile));
+
+    assertThat(issues).containsOnlyKeys(file);
+    assertThat(issues.get(file)).isEmpty();
+  }
+
+  private static ClientInputFile inputFile(VirtualFile file) {
+    ClientInputFile inputFile = mock(ClientInputFile.class);
+    when(inputFile.getPath()).thenReturn(file.getPath());
+    when(inputFile.<VirtualFile>getClientObject()).thenReturn(file);
+    return inputFile;
+  }
+
+  private static Issue issue(ClientInputFile inputFile, String ruleKey, @Nullable Integer line) {
+    Issue issue = mock(Issue.class);
+    when(issue.getInputFile()).thenReturn(inputFile);
+    when(issue.getRuleKey()).thenReturn(ruleKey);
+    when(issue.getMessage()).thenReturn("msg");
+    when(issue.getStartLine()).thenReturn(line);
+    when(issue.getStartLineOffset()).thenReturn(null);
+    when(issue.getEndLine()).thenReturn(line);
+    when(issue.getEndLineOffset()).thenReturn(null);
+    return issue;
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue;
+
+import com.intellij.lang.Language;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.RangeMarker;
+import com.intellij.openapi.fileEditor.FileDocumentManager;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.junit.Before;
+import org.junit.Test;
+import org.sonarlint.intellij.AbstractSonarLintLightTests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LocationRangeTest extends AbstractSonarLintLightTests {
+  private VirtualFile file;
+  private Document document;
+
+  @Before
+  public void prepare() {
+    file = createTestFile("Foo.java", Language.findLanguageByID("JAVA"), "class Foo {\n  int bar;\n}\n");
+    document = FileDocumentManager.getInstance().getDocument(file);
+  }
+
+  @Test
+  public void should_create_marker_only_when_needed() {
+    LocationRange range = LocationRange.deferred(file, document, 14, 22);
+
+    assertThat(range.existingMarker()).isNull();
+    assertThat(range.isValid()).isTrue();
+    assertThat(range.getStartOffset()).isEqualTo(14);
+    assertThat(range.getEndOffset()).isEqualTo(22);
+
+    RangeMarker marker = range.marker();
+    assertThat(marker).isNotNull();
+    assertThat(marker.getStartOffset()).isEqualTo(14);
+    assertThat(marker.getEndOffset()).isEqualTo(22);
+    assertThat(range.existingMarker()).isSameAs(marker);
+    assertThat(range.marker()).isSameAs(marker);
+  }
+
+  @Test
+  public void should_be_outdated_if_document_changed_before_marker_creation() {
+    LocationRange range = LocationRange.deferred(file, document, 14, 22);
+
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(0, "\n"));
+
+    assertThat(range.isValid()).isFalse();
+    assertThat(range.marker()).isNull();
+  }
+
+  @Test
+  public void should_follow_document_changes_once_marker_created() {
+    LocationRange range = LocationRange.deferred(file, document, 14, 22);
+    range.marker();
+
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> document.insertString(0, "\n"));
+
+    assertThat(range.isValid()).isTrue();
+    assertThat(range.getStartOffset()).isEqualTo(15);
+  }
+
+  @Test
+  public void should_wrap_existing_marker() {
+    RangeMarker marker = document.createRangeMarker(0, 5);
+    LocationRange range = LocationRange.of(marker);
+
+    assertThat(range.existingMarker()).isSameAs(marker);
+    assertThat(range.marker()).isSameAs(marker);
+    assertThat(range.isValid()).isTrue();
+  }
+}
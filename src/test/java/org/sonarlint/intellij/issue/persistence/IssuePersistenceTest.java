@@ -21,9 +21,18 @@ package org.sonarlint.intellij.issue.persistence;
 
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.vfs.VirtualFile;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
 import javax.annotation.Nullable;
 import org.junit.Before;
 import org.junit.Rule;
@@ -31,8 +40,11 @@ import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 import org.sonarlint.intellij.issue.LocalIssueTrackable;
 import org.sonarlint.intellij.issue.tracking.Trackable;
+import org.sonarlint.intellij.proto.Sonarlint;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.HashingPathMapper;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -49,6 +61,7 @@ public class IssuePersistenceTest {
     VirtualFile baseDir = mock(VirtualFile.class);
 
     when(project.getBaseDir()).thenReturn(baseDir);
+    when(project.getBasePath()).thenReturn(temp.getRoot().getAbsolutePath());
     when(baseDir.getPath()).thenReturn(temp.getRoot().getAbsolutePath());
     when(baseDir.findFileByRelativePath(anyString())).thenReturn(baseDir);
     persistence = new IssuePersistence(project);
@@ -98,6 +111,176 @@ public class IssuePersistenceTest {
     assertThat(issue.getServerIssueKey()).isEqualTo("serverKey");
   }
 
+  @Test
+  public void should_store_read_lines_and_shared_strings() throws IOException {
+    persistence.save("key", Arrays.asList(trackable("rule1", "msg", 10), trackable("rule2", "msg", null), trackable("rule1", "msg2", 3)));
+
+    Collection<LocalIssueTrackable> issues = persistence.read("key");
+    assertThat(issues).extracting(Trackable::getRuleKey, Trackable::getMessage, Trackable::getLine)
+      .containsOnly(tuple("rule1", "msg", 10), tuple("rule2", "msg", null), tuple("rule1", "msg2", 3));
+  }
+
+  @Test
+  public void should_read_previous_format() throws IOException {
+    Sonarlint.Issues previous = Sonarlint.Issues.newBuilder()
+      .addIssue(Sonarlint.Issues.Issue.newBuilder().setRuleKey("rule1").setMessage("msg").setLine(7).setAssignee("assignee"))
+      .addIssue(Sonarlint.Issues.Issue.newBuilder().setRuleKey("rule1").setMessage("msg").setLine(2))
+      .build();
+
+    Sonarlint.DictionaryIssues issues = IssuePersistence.readIssues(new ByteArrayInputStream(previous.toByteArray()));
+
+    assertThat(issues.getDictionaryList()).containsExactly("rule1", "msg");
+    assertThat(issues.getIssueList()).extracting(Sonarlint.DictionaryIssues.Issue::getLineDelta).containsExactly(2, 5);
+    assertThat(issues.getIssue(1).getAssignee()).isEqualTo("assignee");
+    assertThat(IssuePersistence.readIssues(new ByteArrayInputStream(new byte[0])).getIssueCount()).isZero();
+  }
+
+  @Test
+  public void should_migrate_previous_store() throws IOException {
+    persistence.dispose();
+    Path storePath = temp.getRoot().toPath().resolve(".idea/sonarlint/issuestore");
+    IndexedObjectStore<String, Sonarlint.Issues> previousStore = new IndexedObjectStore<>(new StringStoreIndex(storePath),
+      new HashingPathMapper(storePath, 2), is -> null, (os, issues) -> {
+        try {
+          issues.writeTo(os);
+        } catch (IOException e) {
+          throw new IllegalStateException(e);
+        }
+      }, key -> true);
+    previousStore.write("key", Sonarlint.Issues.newBuilder()
+      .addIssue(Sonarlint.Issues.Issue.newBuilder().setRuleKey("rule1").setMessage("msg").setLine(7).setAssignee("assignee"))
+      .build());
+
+    persistence = new IssuePersistence(project);
+
+    assertThat(persistence.read("key")).extracting(Trackable::getRuleKey, Trackable::getLine, Trackable::getAssignee)
+      .containsOnly(tuple("rule1", 7, "assignee"));
+    assertThat(storePath.resolve(StringStoreIndex.INDEX_FILENAME)).doesNotExist();
+  }
+
+  @Test
+  public void should_keep_issues_per_branch() throws IOException {
+    persistence.save("shared", Collections.singleton(trackable("rule1", "msg", 1)));
+    persistence.switchBranch("master");
+    persistence.save("key", Collections.singleton(trackable("rule1", "master", 1)));
+
+    persistence.switchBranch("feature");
+    persistence.save("key", Collections.singleton(trackable("rule1", "feature", 1)));
+    assertThat(persistence.getBranch()).isEqualTo("feature");
+    assertThat(persistence.read("key")).extracting(Trackable::getMessage).containsOnly("feature");
+    assertThat(persistence.read("shared")).extracting(Trackable::getMessage).containsOnly("msg");
+
+    persistence.switchBranch("master");
+    assertThat(persistence.read("key")).extracting(Trackable::getMessage).containsOnly("master");
+
+    persistence.switchBranch("feature");
+    assertThat(persistence.read("key")).extracting(Trackable::getMessage).containsOnly("feature");
+
+    // issues of other branches are not read for the files never saved on a branch
+    persistence.switchBranch("new");
+    assertThat(persistence.read("key")).isNull();
+    assertThat(persistence.read("shared")).extracting(Trackable::getMessage).containsOnly("msg");
+  }
+
+  @Test
+  public void should_keep_current_branch_snapshot_when_deleting_old_ones() throws IOException {
+    persistence.switchBranch("current");
+    Path branchesPath = temp.getRoot().toPath().resolve(".idea/sonarlint/issuestore").resolve(IssuePersistence.BRANCHES_DIR);
+    Path current;
+    try (Stream<Path> snapshots = Files.list(branchesPath)) {
+      current = snapshots.findFirst().get();
+    }
+    for (int i = 0; i <= IssuePersistence.MAX_BRANCH_SNAPSHOTS; i++) {
+      Files.setLastModifiedTime(Files.createDirectory(branchesPath.resolve("branch" + i)), FileTime.fromMillis(2000));
+    }
+    // the current snapshot is the one used the longest time ago
+    Files.setLastModifiedTime(current, FileTime.fromMillis(1000));
+
+    persistence.deleteOldBranchSnapshots();
+
+    try (Stream<Path> snapshots = Files.list(branchesPath)) {
+      assertThat(snapshots.count()).isEqualTo(IssuePersistence.MAX_BRANCH_SNAPSHOTS);
+    }
+    assertThat(current).exists();
+  }
+
+  @Test
+  public void should_restore_branch_when_reopened() throws IOException {
+    persistence.switchBranch("feature");
+    persistence.save("key", Collections.singleton(trackable("rule1", "feature", 1)));
+    persistence.dispose();
+
+    persistence = new IssuePersistence(project);
+    assertThat(persistence.getBranch()).isEqualTo("feature");
+    assertThat(persistence.read("key")).extracting(Trackable::getMessage).containsOnly("feature");
+  }
+
+  @Test
+  public void should_save_all() throws IOException {
+    Map<String, Collection<Trackable>> issues = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      issues.put("key" + i, Collections.singleton(trackable("rule" + i, "msg", i)));
+    }
+
+    persistence.saveAll(issues, 10_000);
+
+    assertThat(persistence.read("key7")).extracting(Trackable::getRuleKey).containsOnly("rule7");
+    assertThat(temp.getRoot().toPath().resolve(".idea/sonarlint/issuestore").resolve(IssuePersistence.RECOVERY_JOURNAL_FILENAME)).doesNotExist();
+  }
+
+  @Test
+  public void should_recover_issues_not_saved_in_time() throws IOException {
+    Map<String, Collection<Trackable>> issues = new HashMap<>();
+    for (int i = 0; i < 10; i++) {
+      issues.put("key" + i, Collections.singleton(trackable("rule" + i, "msg", i)));
+    }
+
+    persistence.saveAll(issues, -1);
+    assertThat(persistence.read("key7")).isNull();
+    persistence.dispose();
+
+    persistence = new IssuePersistence(project);
+    assertThat(persistence.read("key7")).extracting(Trackable::getRuleKey).containsOnly("rule7");
+    assertThat(persistence.read("key0")).extracting(Trackable::getRuleKey).containsOnly("rule0");
+  }
+
+  @Test
+  public void should_recover_entries_before_incomplete_last_entry() throws IOException {
+    persistence.saveAll(Collections.singletonMap("key", Collections.singleton(trackable("rule", "msg", 3))), -1);
+    persistence.dispose();
+    Path journal = temp.getRoot().toPath().resolve(".idea/sonarlint/issuestore").resolve(IssuePersistence.RECOVERY_JOURNAL_FILENAME);
+    IssuePersistence.awaitRecoveryJournal(journal);
+    // length of 50 bytes, but only 2 bytes written
+    Files.write(journal, new byte[] {50, 1, 2}, StandardOpenOption.APPEND);
+
+    persistence = new IssuePersistence(project);
+    assertThat(persistence.read("key")).extracting(Trackable::getRuleKey, Trackable::getLine).containsOnly(tuple("rule", 3));
+    assertThat(journal).doesNotExist();
+  }
+
+  @Test
+  public void should_keep_corrupted_journal_aside() throws IOException {
+    persistence.saveAll(Collections.singletonMap("key", Collections.singleton(trackable("rule", "msg", 3))), -1);
+    persistence.dispose();
+    Path storePath = temp.getRoot().toPath().resolve(".idea/sonarlint/issuestore");
+    Path journal = storePath.resolve(IssuePersistence.RECOVERY_JOURNAL_FILENAME);
+    IssuePersistence.awaitRecoveryJournal(journal);
+    Files.write(journal, new byte[] {3, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF}, StandardOpenOption.APPEND);
+
+    persistence = new IssuePersistence(project);
+    assertThat(persistence.read("key")).extracting(Trackable::getRuleKey).containsOnly("rule");
+    assertThat(journal).doesNotExist();
+    assertThat(storePath.resolve(IssuePersistence.RECOVERY_JOURNAL_FILENAME + IssuePersistence.CORRUPTED_SUFFIX)).exists();
+  }
+
+  private static Trackable trackable(String ruleKey, String message, @Nullable Integer line) {
+    Trackable trackable = mock(Trackable.class);
+    when(trackable.getRuleKey()).thenReturn(ruleKey);
+    when(trackable.getMessage()).thenReturn(message);
+    when(trackable.getLine()).thenReturn(line);
+    return trackable;
+  }
+
   private Trackable testTrackable = new Trackable() {
     @Override public Integer getLine() {
       return 5;
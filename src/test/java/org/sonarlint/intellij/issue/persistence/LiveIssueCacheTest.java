@@ -21,20 +21,33 @@ package org.sonarlint.intellij.issue.persistence;
 
 import com.intellij.openapi.vfs.VirtualFile;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.MockitoAnnotations;
 import org.sonarlint.intellij.AbstractSonarLintLightTests;
 import org.sonarlint.intellij.issue.LiveIssue;
+import org.sonarlint.intellij.issue.LocalIssueTrackable;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyMap;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.verifyZeroInteractions;
@@ -49,8 +62,12 @@ public class LiveIssueCacheTest extends AbstractSonarLintLightTests {
 
   private LiveIssueCache cache;
 
+  @Captor
+  private ArgumentCaptor<Map<String, Collection<LiveIssue>>> issuesByKeyCaptor;
+
   @Before
   public void before() {
+    MockitoAnnotations.initMocks(this);
     replaceProjectService(IssuePersistence.class, store);
     cache = new LiveIssueCache(getProject(), MAX_ENTRIES_FOR_TEST);
   }
@@ -110,7 +127,117 @@ public class LiveIssueCacheTest extends AbstractSonarLintLightTests {
     VirtualFile file = myFixture.copyFileToProject("foo.php", "anotherfile.php");
     cache.save(file, Collections.singleton(issue1));
 
-    verify(store).save(eq("foo1.php"), anyCollection());
+    verify(store, timeout(1000)).save(eq("foo1.php"), anyCollection());
+  }
+
+  @Test
+  public void should_evict_when_over_memory_budget() throws IOException {
+    long weightOfOneIssue = LiveIssueWeigher.weight(Collections.singleton(createTestIssue("r1")));
+    cache = new LiveIssueCache(getProject(), MAX_ENTRIES_FOR_TEST, 10, 3 * weightOfOneIssue);
+
+    for (int i = 0; i < 3; i++) {
+      cache.save(myFixture.copyFileToProject("foo.php", "foo" + i + ".php"), Collections.singleton(createTestIssue("r1")));
+    }
+    verifyZeroInteractions(store);
+
+    // one big file evicts all others, but is kept even if it exceeds the budget alone
+    VirtualFile big = myFixture.copyFileToProject("foo.php", "big.php");
+    cache.save(big, Arrays.asList(createTestIssue("r1"), createTestIssue("r2"), createTestIssue("r3"), createTestIssue("r4")));
+
+    assertThat(cache.getLive(big)).hasSize(4);
+    verify(store, timeout(1000)).save(eq("foo0.php"), anyCollection());
+    verify(store, timeout(1000)).save(eq("foo1.php"), anyCollection());
+    verify(store, timeout(1000)).save(eq("foo2.php"), anyCollection());
+    assertThat(cache.getStats().entries()).isEqualTo(1);
+    assertThat(cache.getStats().evictions()).isEqualTo(3);
+  }
+
+  @Test
+  public void should_count_hits_and_misses() {
+    VirtualFile file = myFixture.copyFileToProject("foo.php", "foo.php");
+    cache.save(file, Collections.singleton(createTestIssue("r1")));
+    cache.save(file, Collections.singleton(createTestIssue("r2")));
+
+    cache.getLive(file);
+    cache.getLive(file);
+    cache.getLive(myFixture.copyFileToProject("foo.php", "foo2.php"));
+
+    LiveIssueCache.Stats stats = cache.getStats();
+    assertThat(stats.hits()).isEqualTo(2);
+    assertThat(stats.misses()).isEqualTo(1);
+    assertThat(stats.evictions()).isZero();
+    assertThat(stats.entries()).isEqualTo(1);
+    assertThat(stats.weight()).isEqualTo(LiveIssueWeigher.weight(Collections.singleton(createTestIssue("r2"))));
+
+    cache.clear(file);
+    assertThat(cache.getStats().weight()).isZero();
+  }
+
+  @Test
+  public void should_read_evicted_entries_until_persisted() throws Exception {
+    CountDownLatch persisting = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      persisting.countDown();
+      release.await();
+      return null;
+    }).when(store).save(anyString(), anyCollection());
+
+    LiveIssue issue1 = createTestIssue("r1");
+    VirtualFile file0 = myFixture.copyFileToProject("foo.php", "foo0.php");
+    cache.save(file0, Collections.singleton(issue1));
+    for (int i = 1; i <= MAX_ENTRIES_FOR_TEST; i++) {
+      VirtualFile file = myFixture.copyFileToProject("foo.php", "foo" + i + ".php");
+      cache.save(file, Collections.singleton(issue1));
+    }
+    LiveIssue issue2 = createTestIssue("r2");
+    VirtualFile file1 = myFixture.copyFileToProject("foo.php", "foo1.php");
+    VirtualFile another = myFixture.copyFileToProject("foo.php", "another.php");
+    cache.save(another, Collections.singleton(issue2));
+
+    // foo0.php is being written, foo1.php is waiting in the queue, none of them blocks readers
+    assertThat(persisting.await(1, TimeUnit.SECONDS)).isTrue();
+    assertThat(cache.getLive(file0)).containsOnly(issue1);
+    assertThat(cache.getLive(file1)).containsOnly(issue1);
+    assertThat(cache.getLive(another)).containsOnly(issue2);
+
+    release.countDown();
+    verify(store, timeout(1000)).save(eq("foo1.php"), anyCollection());
+  }
+
+  @Test
+  public void should_read_through_prefetched_issues() throws IOException {
+    LocalIssueTrackable trackable = mock(LocalIssueTrackable.class);
+    when(store.read("foo.php")).thenReturn(Collections.singletonList(trackable));
+    VirtualFile file = myFixture.copyFileToProject("foo.php", "foo.php");
+
+    cache.prefetch(file);
+    cache.prefetch(file);
+
+    assertThat(cache.getPersisted(file)).containsOnly(trackable);
+    verify(store).read("foo.php");
+  }
+
+  @Test
+  public void should_not_prefetch_cached_files() throws IOException {
+    VirtualFile file = myFixture.copyFileToProject("foo.php", "foo.php");
+    cache.save(file, Collections.singleton(createTestIssue("r1")));
+
+    cache.prefetch(file);
+
+    verifyZeroInteractions(store);
+  }
+
+  @Test
+  public void should_discard_prefetched_issues_on_save() throws IOException {
+    when(store.read("foo.php")).thenReturn(Collections.emptyList());
+    VirtualFile file = myFixture.copyFileToProject("foo.php", "foo.php");
+
+    cache.prefetch(file);
+    cache.save(file, Collections.singleton(createTestIssue("r1")));
+    cache.getPersisted(file);
+
+    verify(store, timeout(1000).times(2)).read("foo.php");
   }
 
   @Test
@@ -150,14 +277,14 @@ public class LiveIssueCacheTest extends AbstractSonarLintLightTests {
 
     cache.flushAll();
 
-    verify(store).save(eq("foo0.php"), anyCollection());
-    verify(store).save(eq("foo1.php"), anyCollection());
+    verify(store).saveAll(issuesByKeyCaptor.capture(), anyLong());
+    assertThat(issuesByKeyCaptor.getValue()).containsOnlyKeys("foo0.php", "foo1.php");
     verifyNoMoreInteractions(store);
   }
 
   @Test
   public void error_flush() throws IOException {
-    doThrow(new IOException()).when(store).save(anyString(), anyCollection());
+    doThrow(new IOException()).when(store).saveAll(anyMap(), anyLong());
 
     LiveIssue issue1 = createTestIssue("r1");
     VirtualFile file0 = myFixture.copyFileToProject("foo.php", "foo0.php");
@@ -177,8 +304,29 @@ public class LiveIssueCacheTest extends AbstractSonarLintLightTests {
       cache.save(file, Collections.singleton(issue1));
     }
 
-    exception.expect(IllegalStateException.class);
+    // error is logged by the flusher, it doesn't fail the save
     cache.save(myFixture.copyFileToProject("foo.php", "another.php"), Collections.singleton(issue1));
+    verify(store, timeout(1000)).save(eq("foo0.php"), anyCollection());
+  }
+
+  @Test
+  public void should_keep_evicted_entries_whose_write_failed() throws Exception {
+    doThrow(new IOException()).when(store).save(anyString(), anyCollection());
+
+    LiveIssue issue1 = createTestIssue("r1");
+    VirtualFile file0 = myFixture.copyFileToProject("foo.php", "foo0.php");
+    cache.save(file0, Collections.singleton(issue1));
+    for (int i = 1; i <= MAX_ENTRIES_FOR_TEST; i++) {
+      VirtualFile file = myFixture.copyFileToProject("foo.php", "foo" + i + ".php");
+      cache.save(file, Collections.singleton(issue1));
+    }
+    verify(store, timeout(1000)).save(eq("foo0.php"), anyCollection());
+
+    assertThat(cache.getLive(file0)).containsOnly(issue1);
+    // written again with the other entries
+    cache.flushAll();
+    verify(store).saveAll(issuesByKeyCaptor.capture(), anyLong());
+    assertThat(issuesByKeyCaptor.getValue()).containsKey("foo0.php");
   }
 
   private LiveIssue createTestIssue(String ruleKey) {
@@ -0,0 +1,297 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.persistence;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Scanner;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Reader;
+import org.sonarsource.sonarlint.core.client.api.connected.objectstore.Writer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SegmentedObjectStoreTest {
+  @Rule
+  public TemporaryFolder temp = new TemporaryFolder();
+
+  private Path root;
+  private StoreKeyValidator<String> validator = mock(StoreKeyValidator.class);
+  private Reader<String> reader = stream -> new Scanner(stream).useDelimiter("\\A").next();
+  private Writer<String> writer = (stream, str) -> {
+    try {
+      stream.write(str.getBytes());
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  };
+  private SegmentedObjectStore<String> store;
+
+  @Before
+  public void setUp() {
+    root = temp.getRoot().toPath();
+    when(validator.apply(anyString())).thenReturn(Boolean.TRUE);
+    store = new SegmentedObjectStore<>(root, reader, writer, validator);
+  }
+
+  @After
+  public void tearDown() {
+    store.close();
+  }
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    store.write("mykey", "myvalue");
+    store.write("mykey2", "myvalue2");
+    store.write("mykey", "newvalue");
+
+    assertThat(store.read("mykey")).contains("newvalue");
+    assertThat(store.read("mykey2")).contains("myvalue2");
+    assertThat(store.read("random")).isEmpty();
+    assertThat(store.contains("mykey")).isTrue();
+    assertThat(store.contains("random")).isFalse();
+    assertThat(segmentFiles()).hasSize(1);
+  }
+
+  @Test
+  public void testDelete() throws IOException {
+    store.write("mykey", "myvalue");
+    store.delete("mykey");
+    store.delete("random");
+
+    assertThat(store.read("mykey")).isEmpty();
+    assertThat(store.contains("mykey")).isFalse();
+  }
+
+  @Test
+  public void testReplayAfterReopen() throws IOException {
+    store.write("mykey", "myvalue");
+    store.write("mykey2", "myvalue2");
+    store.write("mykey", "newvalue");
+    store.delete("mykey2");
+    store.close();
+
+    store = new SegmentedObjectStore<>(root, reader, writer, validator);
+    assertThat(store.read("mykey")).contains("newvalue");
+    assertThat(store.contains("mykey2")).isFalse();
+    assertThat(store.keys()).containsOnly("mykey");
+  }
+
+  @Test
+  public void testDiscardCorruptedTail() throws IOException {
+    store.write("mykey", "myvalue");
+    store.close();
+    Path segment = segmentFiles()[0];
+    long validSize = Files.size(segment);
+    Files.write(segment, new byte[] {0, 0, 0, 5, 0, 0}, StandardOpenOption.APPEND);
+
+    store = new SegmentedObjectStore<>(root, reader, writer, validator);
+    assertThat(store.read("mykey")).contains("myvalue");
+    assertThat(Files.size(segment)).isEqualTo(validSize);
+
+    store.write("mykey2", "myvalue2");
+    assertThat(store.read("mykey2")).contains("myvalue2");
+  }
+
+  @Test
+  public void testRollSegments() throws IOException {
+    store.close();
+    store = new SegmentedObjectStore<>(root, reader, writer, validator, 64, MoreExecutors.newDirectExecutorService());
+    for (int i = 0; i < 10; i++) {
+      store.write("key" + i, "some value that is long enough " + i);
+    }
+
+    assertThat(segmentFiles().length).isGreaterThan(1);
+    for (int i = 0; i < 10; i++) {
+      assertThat(store.read("key" + i)).contains("some value that is long enough " + i);
+    }
+  }
+
+  @Test
+  public void testCompaction() throws IOException {
+    store.close();
+    store = new SegmentedObjectStore<>(root, reader, writer, validator, 256, MoreExecutors.newDirectExecutorService());
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < 5; i++) {
+        store.write("key" + i, "value " + round + " of a key " + i);
+      }
+    }
+
+    assertThat(segmentFiles().length).isLessThanOrEqualTo(3);
+    for (int i = 0; i < 5; i++) {
+      assertThat(store.read("key" + i)).contains("value 19 of a key " + i);
+    }
+
+    store.close();
+    store = new SegmentedObjectStore<>(root, reader, writer, validator, 256, MoreExecutors.newDirectExecutorService());
+    for (int i = 0; i < 5; i++) {
+      assertThat(store.read("key" + i)).contains("value 19 of a key " + i);
+    }
+  }
+
+  @Test
+  public void should_ignore_segments_replaced_by_interrupted_compaction() throws IOException {
+    Path otherRoot = temp.newFolder().toPath();
+    SegmentedObjectStore<String> otherStore = new SegmentedObjectStore<>(otherRoot, reader, writer, validator);
+    otherStore.write("deleted", "old value");
+    otherStore.close();
+    Path staleSegment;
+    try (Stream<Path> files = Files.list(otherRoot.resolve(SegmentedObjectStore.SEGMENTS_DIR))) {
+      staleSegment = files.findFirst().get();
+    }
+
+    store.close();
+    store = new SegmentedObjectStore<>(root, reader, writer, validator, 256, MoreExecutors.newDirectExecutorService());
+    store.write("deleted", "old value");
+    store.delete("deleted");
+    for (int round = 0; round < 20; round++) {
+      for (int i = 0; i < 5; i++) {
+        store.write("key" + i, "value " + round + " of a key " + i);
+      }
+    }
+    store.close();
+    Path compacted = Arrays.stream(segmentFiles()).filter(p -> p.getFileName().toString().endsWith(".compacted.log")).findFirst().get();
+    // as if the compaction stopped before deleting the segment it replaced, which had the value but not the tombstone
+    Path replaced = compacted.resolveSibling(compacted.getFileName().toString().replace(".compacted.log", ".log"));
+    Files.copy(staleSegment, replaced);
+
+    store = new SegmentedObjectStore<>(root, reader, writer, validator, 256, MoreExecutors.newDirectExecutorService());
+    assertThat(store.contains("deleted")).isFalse();
+    assertThat(store.read("key3")).contains("value 19 of a key 3");
+    assertThat(replaced).doesNotExist();
+  }
+
+  @Test
+  public void testClear() throws IOException {
+    store.write("mykey", "myvalue");
+    store.clear();
+
+    assertThat(store.read("mykey")).isEmpty();
+    store.write("mykey2", "myvalue2");
+    assertThat(store.read("mykey2")).contains("myvalue2");
+  }
+
+  @Test
+  public void testDeleteInvalid() throws IOException {
+    store.write("mykey", "myvalue");
+    store.write("mykey2", "myvalue2");
+    when(validator.apply("mykey")).thenReturn(Boolean.FALSE);
+    when(validator.apply("mykey2")).thenReturn(Boolean.TRUE);
+
+    store.deleteInvalid();
+
+    assertThat(store.contains("mykey")).isFalse();
+    assertThat(store.contains("mykey2")).isTrue();
+  }
+
+  @Test
+  public void should_write_all_in_batch() throws IOException {
+    store.close();
+    store = new SegmentedObjectStore<>(root, reader, writer, validator, 64, MoreExecutors.newDirectExecutorService());
+    store.write("mykey", "oldvalue");
+    Map<String, String> values = new HashMap<>();
+    for (int i = 0; i < 20; i++) {
+      values.put("key" + i, "value" + i);
+    }
+    values.put("mykey", "newvalue");
+
+    store.writeAll(values);
+    assertThat(store.read("key7")).contains("value7");
+    assertThat(store.read("mykey")).contains("newvalue");
+
+    store.close();
+    store = new SegmentedObjectStore<>(root, reader, writer, validator);
+    assertThat(store.keys()).hasSize(21);
+    assertThat(store.read("key19")).contains("value19");
+    assertThat(store.read("mykey")).contains("newvalue");
+  }
+
+  @Test
+  public void should_validate_lazily_entries_loaded_from_disk() throws IOException {
+    store.write("mykey", "myvalue");
+    store.write("mykey2", "myvalue2");
+    store.close();
+    when(validator.apply("mykey")).thenReturn(Boolean.FALSE);
+
+    store = new SegmentedObjectStore<>(root, reader, writer, validator);
+    assertThat(store.read("mykey")).isEmpty();
+    assertThat(store.read("mykey2")).contains("myvalue2");
+    assertThat(store.keys()).containsOnly("mykey2");
+
+    // validated only once
+    store.read("mykey2");
+    verify(validator, times(1)).apply("mykey2");
+  }
+
+  @Test
+  public void should_validate_in_background() throws IOException {
+    for (int i = 0; i < SegmentedObjectStore.VALIDATION_CHUNK_SIZE + 10; i++) {
+      store.write("mykey" + i, "myvalue");
+    }
+    store.close();
+    when(validator.apply("mykey3")).thenReturn(Boolean.FALSE);
+    when(validator.apply("mykey" + SegmentedObjectStore.VALIDATION_CHUNK_SIZE)).thenReturn(Boolean.FALSE);
+
+    store = new SegmentedObjectStore<>(root, reader, writer, validator, SegmentedObjectStore.DEFAULT_MAX_SEGMENT_SIZE,
+      MoreExecutors.newDirectExecutorService());
+    store.validateInBackground();
+
+    assertThat(store.keys()).hasSize(SegmentedObjectStore.VALIDATION_CHUNK_SIZE + 8);
+    assertThat(store.read("mykey3")).isEmpty();
+    // all keys were checked by the background validation, reads don't check them again
+    store.read("mykey4");
+    verify(validator, times(1)).apply("mykey4");
+  }
+
+  @Test
+  public void should_stop_validation_when_closed() throws IOException {
+    store.write("mykey", "myvalue");
+    store.close();
+
+    store = new SegmentedObjectStore<>(root, reader, writer, validator);
+    store.close();
+    store.validateInBackground();
+
+    verify(validator, never()).apply(anyString());
+  }
+
+  private Path[] segmentFiles() throws IOException {
+    try (Stream<Path> files = Files.list(root.resolve(SegmentedObjectStore.SEGMENTS_DIR))) {
+      return files.filter(p -> p.getFileName().toString().endsWith(".log")).sorted().toArray(Path[]::new);
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * SonarLint for IntelliJ IDEA
+ * Copyright (C) 2015-2020 SonarSource
+ * sonarlint@sonarsource.com
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this program; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston, MA  02
+ */
+package org.sonarlint.intellij.issue.tracking;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.junit.Test;
+import org.sonarlint.intellij.AbstractSonarLintLightTests;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TrackerTest extends AbstractSonarLintLightTests {
+  private final Tracker<Trackable, Trackable> tracker = new Tracker<>();
+
+  @Test
+  public void should_match_identical_issues() {
+    Trackable raw1 = trackable("rule1", "msg", 1, 11, null);
+    Trackable raw2 = trackable("rule2", "msg", 2, 22, null);
+    Trackable base1 = trackable("rule1", "msg", 1, 11, null);
+    Trackable base2 = trackable("rule2", "msg", 2, 22, null);
+
+    Tracking<Trackable, Trackable> tracking = track(Arrays.asList(raw1, raw2), Arrays.asList(base1, base2));
+
+    assertThat(tracking.baseFor(raw1)).isSameAs(base1);
+    assertThat(tracking.baseFor(raw2)).isSameAs(base2);
+    assertThat(tracking.getUnmatchedBases()).isEmpty();
+  }
+
+  @Test
+  public void should_match_identical_issues_in_any_order() {
+    Trackable raw1 = trackable("rule1", "msg", 1, 11, null);
+    Trackable raw2 = trackable("rule2", "msg", 2, 22, null);
+    Trackable raw3 = trackable("rule2", "msg", 2, 22, null);
+    Trackable base1 = trackable("rule2", "msg", 2, 22, null);
+    Trackable base2 = trackable("rule2", "msg", 2, 22, null);
+    Trackable base3 = trackable("rule1", "msg", 1, 11, null);
+
+    Tracking<Trackable, Trackable> tracking = track(Arrays.asList(raw1, raw2, raw3), Arrays.asList(base1, base2, base3));
+
+    assertThat(tracking.baseFor(raw1)).isSameAs(base3);
+    // same key, matched in the order of the input
+    assertThat(tracking.baseFor(raw2)).isSameAs(base1);
+    assertThat(tracking.baseFor(raw3)).isSameAs(base2);
+    assertThat(tracking.getUnmatchedBases()).isEmpty();
+  }
+
+  @Test
+  public void should_prefer_first_search_keys() {
+    Trackable raw = trackable("rule", "msg", 5, 7, null);
+    // same text range hash and message, matched by the second search key
+    Trackable sameMessage = trackable("rule", "msg", 20, 7, null);
+    // same line and text range hash, matched by the first search key
+    Trackable sameLine = trackable("rule", "old msg", 5, 7, null);
+
+    Tracking<Trackable, Trackable> tracking = track(Collections.singletonList(raw), Arrays.asList(sameMessage, sameLine));
+
+    assertThat(tracking.baseFor(raw)).isSameAs(sameLine);
+    assertThat(tracking.getUnmatchedBases()).containsOnly(sameMessage);
+  }
+
+  @Test
+  public void should_match_nearest_candidate_with_same_hash() {
+    Trackable raw = trackable("rule", "new msg", 10, 7, null);
+    Trackable far = trackable("rule", "old msg", 2, 7, null);
+    Trackable near = trackable("rule", "old msg", 11, 7, null);
+
+    Tracking<Trackable, Trackable> tracking = track(Collections.singletonList(raw), Arrays.asList(far, near));
+
+    assertThat(tracking.baseFor(raw)).isSameAs(near);
+    assertThat(tracking.getUnmatchedBases()).containsOnly(far);
+  }
+
+  @Test
+  public void should_match_first_candidate_in_input_when_at_same_distance() {
+    Trackable raw = trackable("rule", "new msg", 10, 7, null);
+    Trackable below = trackable("rule", "old msg", 12, 7, null);
+    Trackable above = trackable("rule", "old msg", 8, 7, null);
+
+    Tracking<Trackable, Trackable> tracking = track(Collections.singletonList(raw), Arrays.asList(below, above));
+
+    assertThat(tracking.baseFor(raw)).isSameAs(below);
+  }
+
+  @Test
+  public void should_skip_candidates_already_matched() {
+    Trackable raw1 = trackable("rule", "new msg", 10, 7, null);
+    Trackable raw2 = trackable("rule", "new msg", 11, 7, null);
+    Trackable base1 = trackable("rule", "old msg", 3, 7, null);
+    Trackable base2 = trackable("rule", "old msg", 30, 7, null);
+
+    Tracking<Trackable, Trackable> tracking = track(Arrays.asList(raw1, raw2), Arrays.asList(base1, base2));
+
+    assertThat(tracking.baseFor(raw1)).isSameAs(base1);
+    assertThat(tracking.baseFor(raw2)).isSameAs(base2);
+    assertThat(tracking.getUnmatchedBases()).isEmpty();
+  }
+
+  @Test
+  public void should_not_match_different_rules() {
+    Trackable raw = trackable("rule1", "msg", 1, 7, null);
+    Trackable base = trackable("rule2", "msg", 1, 7, null);
+
+    Tracking<Trackable, Trackable> tracking = track(Collections.singletonList(raw), Collections.singletonList(base));
+
+    assertThat(tracking.getUnmatchedRaws()).containsOnly(raw);
+    assertThat(tracking.getUnmatchedBases()).containsOnly(base);
+  }
+
+  @Test
+  public void should_match_by_server_issue_key_only_when_present() {
+    Trackable raw = trackable("rule1", "msg1", 1, 1, "key");
+    Trackable rawWithoutKey = trackable("rule1", "msg1", 2, 2, "");
+    Trackable base = trackable("rule2", "msg2", 10, 10, "key");
+    Trackable baseWithoutKey = trackable("rule2", "msg2", 20, 20, "");
+
+    Tracking<Trackable, Trackable> tracking = track(Arrays.asList(raw, rawWithoutKey), Arrays.asList(base, baseWithoutKey));
+
+    assertThat(tracking.baseFor(raw)).isSameAs(base);
+    assertThat(tracking.getUnmatchedRaws()).containsOnly(rawWithoutKey);
+  }
+
+  @Test
+  public void should_read_fields_once_per_issue() {
+    Trackable raw1 = trackable("rule", "new msg", 10, 7, null);
+    Trackable raw2 = trackable("rule", "new msg", 11, 8, null);
+    Trackable base = trackable("rule", "old msg", 3, 8, null);
+
+    track(Arrays.asList(raw1, raw2), Collections.singletonList(base));
+
+    verify(raw1, times(1)).getLine();
+    verify(raw1, times(1)).getTextRangeHash();
+    verify(base, times(1)).getLine();
+    verify(base, times(1)).getTextRangeHash();
+  }
+
+  @Test
+  public void should_not_compute_search_keys_of_matched_issues() {
+    Trackable raw1 = trackable("rule", "msg", 10, 7, null);
+    Trackable raw2 = trackable("rule", "other msg", 20, 8, null);
+    Trackable base = trackable("rule", "msg", 10, 7, null);
+
+    Tracking<Trackable, Trackable> tracking = track(Arrays.asList(raw1, raw2), Collections.singletonList(base));
+
+    assertThat(tracking.baseFor(raw1)).isSameAs(base);
+    verify(raw1, never()).getLineHash();
+    verify(raw2, never()).getLineHash();
+    verify(base, never()).getLineHash();
+  }
+
+  private Tracking<Trackable, Trackable> track(List<Trackable> raws, List<Trackable> bases) {
+    return tracker.track(() -> raws, () -> bases);
+  }
+
+  private static Trackable trackable(String ruleKey, String message, @Nullable Integer line, @Nullable Integer textRangeHash,
+    @Nullable String serverIssueKey) {
+    Trackable trackable = mock(Trackable.class);
+    when(trackable.getRuleKey()).thenReturn(ruleKey);
+    when(trackable.getMessage()).thenReturn(message);
+    when(trackable.getLine()).thenReturn(line);
+    when(trackable.getTextRangeHash()).thenReturn(textRangeHash);
+    when(trackable.getLineHash()).thenReturn(line);
+    when(trackable.getServerIssueKey()).thenReturn(serverIssueKey);
+    return trackable;
+  }
+}
@@ -27,11 +27,13 @@ import java.util.Collections;
 import org.junit.Before;
 import org.junit.Test;
 import org.sonarlint.intellij.AbstractSonarLintLightTests;
+import org.sonarlint.intellij.issue.IssueManager;
 
 import static org.mockito.Mockito.*;
 
 public class EditorOpenTriggerTest extends AbstractSonarLintLightTests {
   private SonarLintSubmitter submitter = mock(SonarLintSubmitter.class);
+  private IssueManager issueManager = mock(IssueManager.class);
 
   private EditorOpenTrigger editorTrigger;
   private VirtualFile file;
@@ -42,6 +44,7 @@ public class EditorOpenTriggerTest extends AbstractSonarLintLightTests {
     editorTrigger = new EditorOpenTrigger();
     getGlobalSettings().setAutoTrigger(true);
     replaceProjectService(SonarLintSubmitter.class, submitter);
+    replaceProjectService(IssueManager.class, issueManager);
 
     file = createAndOpenTestVirtualFile("MyClass.java", Language.findLanguageByID("JAVA"), "public class MyClass{}");
     editorManager = mock(FileEditorManager.class);
@@ -52,6 +55,7 @@ public class EditorOpenTriggerTest extends AbstractSonarLintLightTests {
   public void should_trigger() {
     editorTrigger.fileOpened(editorManager, file);
 
+    verify(issueManager).prefetch(file);
     verify(submitter).submitFiles(Collections.singleton(file), TriggerType.EDITOR_OPEN, true);
   }
 
@@ -61,7 +65,7 @@ public class EditorOpenTriggerTest extends AbstractSonarLintLightTests {
 
     editorTrigger.fileOpened(editorManager, file);
 
-    verifyZeroInteractions(submitter);
+    verifyZeroInteractions(submitter, issueManager);
   }
 
   @Test
@@ -22,10 +22,13 @@ package org.sonarlint.intellij.util;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import java.util.List;
 import org.junit.Test;
+import org.sonarsource.sonarlint.core.client.api.common.ProgressMonitor;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -53,6 +56,26 @@ public class TaskProgressMonitorTest {
     verify(progressManager).executeNonCancelableSection(mockRunnable);
   }
 
+  @Test
+  public void should_average_fractions_of_parts() {
+    List<ProgressMonitor> parts = monitor.split(2);
+
+    parts.get(0).setFraction(0.5f);
+    verify(wrapped).setFraction(0.25f);
+
+    parts.get(1).setFraction(1.0f);
+    verify(wrapped).setFraction(0.75f);
+
+    parts.get(1).setIndeterminate(true);
+    verify(wrapped, never()).setIndeterminate(true);
+
+    parts.get(0).setMessage("message");
+    verify(wrapped).setText("message");
+
+    when(wrapped.isCanceled()).thenReturn(true);
+    assertThat(parts.get(1).isCanceled()).isTrue();
+  }
+
   @Test
   public void cancel_if_project_disposed() {
     Project project = mock(Project.class);